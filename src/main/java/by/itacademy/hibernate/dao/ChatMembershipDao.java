@@ -0,0 +1,89 @@
+package by.itacademy.hibernate.dao;
+
+import by.itacademy.hibernate.entity.Chat;
+import by.itacademy.hibernate.entity.User;
+import by.itacademy.hibernate.entity.UserChat;
+import by.itacademy.hibernate.listener.ChatMembershipIndex;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Участники чатов. Подсчёт и проверка участия отвечают из {@link ChatMembershipIndex} без обращения к базе,
+ * постраничный список берёт id страницы из индекса и загружает только эти записи User.
+ * Изменения участия видны в индексе после коммита транзакции
+ */
+@RequiredArgsConstructor
+public class ChatMembershipDao {
+
+    private final ChatMembershipIndex index;
+
+    /**
+     * Возвращает страницу участников чата размером не больше {limit}, упорядоченную по id.
+     * Для первой страницы {afterUserId} равен null, для следующей - id последнего участника предыдущей
+     */
+    public List<User> findMembers(Session session, Long chatId, Long afterUserId, int limit) {
+        List<Long> ids = index.findMemberIds(chatId, afterUserId, limit);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return session.createQuery("SELECT u FROM User u WHERE u.id IN (:ids) ORDER BY u.id ASC", User.class)
+                .setParameterList("ids", ids)
+                .getResultList();
+    }
+
+    public long countMembers(Long chatId) {
+        return index.countMembers(chatId);
+    }
+
+    public boolean isMember(Long chatId, Long userId) {
+        return index.isMember(chatId, userId);
+    }
+
+    /**
+     * Добавляет сотрудника в чат, если он ещё не участник. Индекс не видит незакоммиченных записей,
+     * поэтому при его промахе наличие записи проверяется ещё и запросом по уникальному ключу (chat_id, user_id).
+     * Если ту же пару одновременно добавляет другая транзакция, вставка нарушит ограничение
+     * и завершится ConstraintViolationException - такую транзакцию нужно откатить.
+     * Возвращает: true, если запись UserChat была создана
+     */
+    public boolean addMember(Session session, Long chatId, Long userId) {
+        if (index.isMember(chatId, userId) || existsInDatabase(session, chatId, userId)) {
+            return false;
+        }
+        session.save(UserChat.builder()
+                .chat(session.load(Chat.class, chatId))
+                .user(session.load(User.class, userId))
+                .build());
+        return true;
+    }
+
+    /**
+     * Удаляет сотрудника из чата.
+     * Возвращает: true, если сотрудник был участником
+     */
+    public boolean removeMember(Session session, Long chatId, Long userId) {
+        Optional<UserChat> userChat = findUserChat(session, chatId, userId);
+        userChat.ifPresent(session::delete);
+        return userChat.isPresent();
+    }
+
+    private boolean existsInDatabase(Session session, Long chatId, Long userId) {
+        return session.createQuery("SELECT COUNT(uc) FROM UserChat uc WHERE uc.chat.id = :chatId AND uc.user.id = :userId",
+                        Long.class)
+                .setParameter("chatId", chatId)
+                .setParameter("userId", userId)
+                .getSingleResult() > 0;
+    }
+
+    private Optional<UserChat> findUserChat(Session session, Long chatId, Long userId) {
+        return session.createQuery("SELECT uc FROM UserChat uc WHERE uc.chat.id = :chatId AND uc.user.id = :userId",
+                        UserChat.class)
+                .setParameter("chatId", chatId)
+                .setParameter("userId", userId)
+                .uniqueResultOptional();
+    }
+}
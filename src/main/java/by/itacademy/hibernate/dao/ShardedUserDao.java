@@ -0,0 +1,225 @@
+package by.itacademy.hibernate.dao;
+
+import by.itacademy.hibernate.entity.Birthday;
+import by.itacademy.hibernate.entity.Payment;
+import by.itacademy.hibernate.entity.Role;
+import by.itacademy.hibernate.entity.User;
+import by.itacademy.hibernate.util.BoundedTopK;
+import by.itacademy.hibernate.util.ShardedSessionFactory;
+import com.querydsl.core.Tuple;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static by.itacademy.hibernate.entity.QUser.user;
+
+/**
+ * Запросы UserDao поверх шардированной базы: запрос параллельно выполняется во всех шардах (scatter),
+ * после чего частичные результаты объединяются с сохранением семантики ORDER BY, LIMIT, AVG и GROUP BY (gather).
+ * <p>
+ * Сессии шардов закрываются до возврата результата, поэтому возвращаемые сущности отсоединены.
+ * У сотрудников заранее загружается компания; профиль, выплаты и чаты не загружаются,
+ * и обращение к ним вызывает LazyInitializationException
+ */
+@RequiredArgsConstructor
+public class ShardedUserDao {
+
+    private static final Comparator<User> BY_BIRTHDAY = Comparator.comparing(
+            (User u) -> u.getPersonalInfo() == null ? null : u.getPersonalInfo().getBirthDate(),
+            Comparator.nullsLast(Comparator.comparing(Birthday::birthDate)));
+
+    private final ShardedSessionFactory shards;
+    private final UserDao userDao = UserDao.getInstance();
+
+    /**
+     * Возвращает всех сотрудников
+     */
+    public List<User> findAll() {
+        return concat(shards.scatter(session -> withCompany(userDao.findAll(session))));
+    }
+
+    /**
+     * Возвращает всех сотрудников с указанным именем
+     */
+    public List<User> findAllByFirstName(String firstName) {
+        return concat(shards.scatter(session -> withCompany(userDao.findAllByFirstName(session, firstName))));
+    }
+
+    /**
+     * Возвращает первые {limit} сотрудников, упорядоченных по дате рождения (в порядке возрастания).
+     * Каждый шард отдаёт свои первые {limit}, общий результат - первые {limit} после слияния.
+     * Сотрудники без даты рождения идут последними и в шардах, и при слиянии: порядок NULL по умолчанию
+     * у баз разный (в H2 - первыми), поэтому шард не может использовать запрос UserDao
+     */
+    public List<User> findLimitedUsersOrderedByBirthday(int limit) {
+        List<List<User>> partials = shards.scatter(session -> withCompany(session.createQuery(
+                        "FROM User u ORDER BY u.personalInfo.birthDate ASC NULLS LAST, u.id ASC", User.class)
+                .setMaxResults(limit)
+                .getResultList()));
+
+        return partials.stream()
+                .flatMap(Collection::stream)
+                .sorted(BY_BIRTHDAY)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Возвращает всех сотрудников компании с указанным названием
+     */
+    public List<User> findAllByCompanyName(String companyName) {
+        return concat(shards.scatter(session -> withCompany(userDao.findAllByCompanyName(session, companyName))));
+    }
+
+    /**
+     * Возвращает все выплаты, полученные сотрудниками компании с указанными именем,
+     * упорядоченные по имени сотрудника, а затем по размеру выплаты
+     */
+    public List<Payment> findAllPaymentsByCompanyName(String companyName) {
+        Comparator<Payment> order = Comparator.comparing((Payment p) -> p.getReceiver().getUsername())
+                .thenComparing(Payment::getAmount);
+
+        List<List<Payment>> partials = shards.scatter(session -> {
+            List<Payment> payments = userDao.findAllPaymentsByCompanyName(session, companyName);
+            payments.forEach(payment -> Hibernate.initialize(payment.getReceiver().getCompany()));
+            return payments;
+        });
+
+        return partials.stream()
+                .flatMap(Collection::stream)
+                .sorted(order)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Возвращает среднюю зарплату сотрудника с указанными именем и фамилией.
+     * Шарды возвращают сумму и количество выплат, среднее считается по их итогам
+     */
+    public Double findAveragePaymentAmountByFirstAndLastNames(String firstName, String lastName) {
+        String hql = "SELECT SUM(p.amount), COUNT(p.amount) " +
+                "FROM Payment p " +
+                "JOIN p.receiver u " +
+                "WHERE u.personalInfo.firstname = :firstName " +
+                "AND u.personalInfo.lastname = :lastName";
+
+        List<Object[]> partials = shards.scatter(session -> session.createQuery(hql, Object[].class)
+                .setParameter("firstName", firstName)
+                .setParameter("lastName", lastName)
+                .getSingleResult());
+
+        long sum = 0;
+        long count = 0;
+        for (Object[] partial : partials) {
+            sum += partial[0] == null ? 0 : ((Number) partial[0]).longValue();
+            count += ((Number) partial[1]).longValue();
+        }
+        return count == 0 ? null : (double) sum / count;
+    }
+
+    /**
+     * Возвращает для каждой компании: название, среднюю зарплату всех её сотрудников. Компании упорядочены по названию.
+     * Сотрудники одной компании распределены по разным шардам, поэтому шарды возвращают сумму и количество выплат
+     */
+    public List<Object[]> findCompanyNamesWithAvgUserPaymentsOrderedByCompanyName() {
+        String hql = "SELECT u.company.name, SUM(p.amount), COUNT(p.amount) " +
+                "FROM User u " +
+                "LEFT JOIN u.payments p " +
+                "GROUP BY u.company.name";
+
+        Map<String, long[]> totals = new TreeMap<>();
+        for (List<Object[]> partial : shards.scatter(session -> session.createQuery(hql, Object[].class).getResultList())) {
+            for (Object[] row : partial) {
+                long[] total = totals.computeIfAbsent((String) row[0], name -> new long[2]);
+                total[0] += row[1] == null ? 0 : ((Number) row[1]).longValue();
+                total[1] += ((Number) row[2]).longValue();
+            }
+        }
+
+        List<Object[]> result = new ArrayList<>(totals.size());
+        totals.forEach((name, total) -> result.add(new Object[]{name, total[1] == 0 ? null : (double) total[0] / total[1]}));
+        return result;
+    }
+
+    /**
+     * Возвращает для каждой компании первых {k} сотрудников по сумме выплат:
+     * название компании, username, сумма выплат, место в компании.
+     * Все выплаты сотрудника лежат в его шарде, поэтому суммы из шардов окончательные
+     */
+    public List<Object[]> findTopEarnersByCompany(int k) {
+        Comparator<Object[]> byTotalDesc = Comparator
+                .comparing((Object[] row) -> (Long) row[2], Comparator.reverseOrder())
+                .thenComparing(row -> (String) row[1]);
+
+        Map<String, BoundedTopK<Object[]>> byCompany = new TreeMap<>();
+        for (List<Object[]> partial : shards.scatter(session -> userDao.findTopEarnersByCompany(session, k))) {
+            for (Object[] row : partial) {
+                byCompany.computeIfAbsent((String) row[0], name -> new BoundedTopK<>(k, byTotalDesc)).offer(row);
+            }
+        }
+
+        List<Object[]> result = new ArrayList<>();
+        byCompany.values().forEach(topK -> {
+            long rank = 1;
+            for (Object[] row : topK.drain()) {
+                Object[] ranked = Arrays.copyOf(row, row.length);
+                ranked[3] = rank++;
+                result.add(ranked);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Возвращает список: размер выплат для всех людей из всех компаний
+     */
+    public List<Integer> findUserSalaries() {
+        return concat(shards.scatter(userDao::findUserSalaries));
+    }
+
+    /**
+     * Возвращает: самый высокий размер выплаты среди всех сотрудников
+     */
+    public Integer findHighestPaymentAmongAllUsers() {
+        return shards.scatter(userDao::findHighestPaymentAmongAllUsers).stream()
+                .filter(Objects::nonNull)
+                .max(Integer::compare)
+                .orElse(null);
+    }
+
+    /**
+     * Возвращает: количество сотрудников каждой роли
+     */
+    public Map<Role, Long> findRolesOfAllUsers() {
+        Map<Role, Long> counts = new HashMap<>();
+        for (List<Tuple> partial : shards.scatter(userDao::findRolesOfAllUsers)) {
+            for (Tuple tuple : partial) {
+                counts.merge(tuple.get(user.role), tuple.get(user.count()), Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Загружает компании сотрудников, пока сессия шарда открыта
+     */
+    private List<User> withCompany(List<User> users) {
+        users.forEach(user -> Hibernate.initialize(user.getCompany()));
+        return users;
+    }
+
+    private <T> List<T> concat(List<List<T>> partials) {
+        return partials.stream()
+                .flatMap(Collection::stream)
+                .collect(Collectors.toList());
+    }
+}
@@ -1,6 +1,7 @@
 package by.itacademy.hibernate.dao;
 
 import by.itacademy.hibernate.entity.*;
+import by.itacademy.hibernate.util.BoundedTopK;
 import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Expression;
 import com.querydsl.core.types.dsl.NumberExpression;
@@ -8,18 +9,40 @@ import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.hibernate.cfg.JPAIndexHolder;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.query.Query;
+import org.hibernate.type.StandardBasicTypes;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class UserDao {
 
     private static final UserDao INSTANCE = new UserDao();
+    private static final int STREAM_FETCH_SIZE = 1_000;
+    private static final long EARNERS_PARTITION_SIZE = 10_000;
+    private static final int PARTITIONS_PER_THREAD = 4;
+    private static final Comparator<Object[]> BY_FIRSTNAME = Comparator
+            .comparing((Object[] row) -> firstname((User) row[0]), Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(row -> ((User) row[0]).getId());
 
     /**
      * Возвращает всех сотрудников
@@ -151,15 +174,110 @@ public class UserDao {
 //        return Collections.emptyList();
 //    }
     public List<Object[]> isItPossible(Session session) {
-        String hql = "SELECT u, COALESCE(AVG(p.amount), 0.0) " +
-                "FROM User u " +
-                "LEFT JOIN u.payments p " +
-                "GROUP BY u " +
-                "HAVING COALESCE(AVG(p.amount), 0.0) > 0.0 " +
-                "ORDER BY u.personalInfo.firstname ASC";
+        Object[] bounds = findPaymentBounds(session);
+        if (bounds[0] == null) {
+            return new ArrayList<>();
+        }
 
-        Query<Object[]> query = session.createQuery(hql);
-        return query.getResultList();
+        List<Object[]> result = new ArrayList<>();
+        for (long[] range : receiverIdRanges(bounds, EARNERS_PARTITION_SIZE)) {
+            result.addAll(findAboveAverageEarners(session, (Double) bounds[0], range[0], range[1]));
+        }
+        result.sort(BY_FIRSTNAME);
+        return result;
+    }
+
+    /**
+     * То же, что {@link #isItPossible(Session)}, но диапазоны id получателей выплат обрабатываются параллельно
+     * в {pool}, каждый в своей сессии только для чтения. Возвращённые сотрудники отсоединены от сессии
+     */
+    public List<Object[]> isItPossible(SessionFactory sessionFactory, ForkJoinPool pool) {
+        Object[] bounds;
+        try (Session session = sessionFactory.openSession()) {
+            bounds = findPaymentBounds(session);
+        }
+        if (bounds[0] == null) {
+            return new ArrayList<>();
+        }
+
+        long span = (Long) bounds[2] - (Long) bounds[1] + 1;
+        long partitions = (long) pool.getParallelism() * PARTITIONS_PER_THREAD;
+        long partitionSize = Math.min(EARNERS_PARTITION_SIZE, (span + partitions - 1) / partitions);
+
+        List<ForkJoinTask<List<Object[]>>> tasks = new ArrayList<>();
+        for (long[] range : receiverIdRanges(bounds, partitionSize)) {
+            tasks.add(pool.submit(() -> {
+                try (Session session = sessionFactory.openSession()) {
+                    session.setDefaultReadOnly(true);
+                    session.beginTransaction();
+                    List<Object[]> earners = findAboveAverageEarners(session, (Double) bounds[0], range[0], range[1]);
+                    session.getTransaction().commit();
+                    return earners;
+                }
+            }));
+        }
+
+        List<Object[]> result = new ArrayList<>();
+        for (ForkJoinTask<List<Object[]>> task : tasks) {
+            result.addAll(task.join());
+        }
+        // каждый диапазон уже упорядочен по имени, сортировка лишь сливает готовые серии
+        result.sort(BY_FIRSTNAME);
+        return result;
+    }
+
+    /**
+     * Hibernate оставляет personalInfo равным null, если все его колонки пусты
+     */
+    private static String firstname(User user) {
+        return user.getPersonalInfo() == null ? null : user.getPersonalInfo().getFirstname();
+    }
+
+    /**
+     * Возвращает: средний размер всех выплат, наименьший и наибольший id получателя выплат
+     */
+    private Object[] findPaymentBounds(Session session) {
+        return session.createQuery("SELECT AVG(p.amount), MIN(p.receiver.id), MAX(p.receiver.id) FROM Payment p",
+                        Object[].class)
+                .getSingleResult();
+    }
+
+    private List<long[]> receiverIdRanges(Object[] bounds, long partitionSize) {
+        long maxId = (Long) bounds[2];
+        List<long[]> ranges = new ArrayList<>();
+        for (long from = (Long) bounds[1]; from <= maxId; from += partitionSize) {
+            ranges.add(new long[]{from, Math.min(from + partitionSize - 1, maxId)});
+        }
+        return ranges;
+    }
+
+    /**
+     * Возвращает сотрудников с id из диапазона [{fromId}, {toId}], чей средний размер выплат больше {globalAverage}.
+     * Средние считаются по индексу payment.receiver_id без группировки по сущности User,
+     * затем прошедшие фильтр сотрудники загружаются одним запросом
+     */
+    private List<Object[]> findAboveAverageEarners(Session session, double globalAverage, long fromId, long toId) {
+        String hql = "SELECT p.receiver.id, AVG(p.amount) " +
+                "FROM Payment p " +
+                "WHERE p.receiver.id BETWEEN :fromId AND :toId " +
+                "GROUP BY p.receiver.id " +
+                "HAVING AVG(p.amount) > :globalAverage";
+        Map<Long, Double> averages = session.createQuery(hql, Object[].class)
+                .setParameter("fromId", fromId)
+                .setParameter("toId", toId)
+                .setParameter("globalAverage", globalAverage)
+                .getResultStream()
+                .collect(Collectors.toMap(row -> (Long) row[0], row -> (Double) row[1]));
+        if (averages.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        return session.createQuery("SELECT u FROM User u WHERE u.id IN (:ids) " +
+                        "ORDER BY u.personalInfo.firstname ASC NULLS LAST, u.id ASC", User.class)
+                .setParameterList("ids", averages.keySet())
+                .getResultStream()
+                .map(user -> new Object[]{user, averages.get(user.getId())})
+                .collect(Collectors.toList());
     }
 //////////
 
@@ -190,6 +308,231 @@ public class UserDao {
         return highestPayment;
     }
 
+    /**
+     * Возвращает для каждой компании первых {k} сотрудников по сумме выплат:
+     * название компании, username, сумма выплат, место в компании.
+     * Упорядочено по названию компании, затем по месту
+     */
+    public List<Object[]> findTopEarnersByCompany(Session session, int k) {
+        return prefersWindowFunctions(session)
+                ? findTopEarnersByCompanyWindowed(session, k)
+                : findTopEarnersByCompanyStreaming(session, k);
+    }
+
+    /**
+     * То же, что {@link #findTopEarnersByCompany}, одним запросом с ROW_NUMBER()
+     */
+    public List<Object[]> findTopEarnersByCompanyWindowed(Session session, int k) {
+        requirePositive(k);
+        String sql = "SELECT r.company_name, r.username, r.total, r.rn " +
+                "FROM (SELECT c.name AS company_name, u.username AS username, " +
+                "             COALESCE(SUM(p.amount), 0) AS total, " +
+                "             ROW_NUMBER() OVER (PARTITION BY c.id " +
+                "                                ORDER BY COALESCE(SUM(p.amount), 0) DESC, u.username ASC) AS rn " +
+                "      FROM public.users u " +
+                "      JOIN company c ON c.id = u.company_id " +
+                "      LEFT JOIN payment p ON p.receiver_id = u.id " +
+                "      GROUP BY c.id, c.name, u.id, u.username) r " +
+                "WHERE r.rn <= :k " +
+                "ORDER BY r.company_name ASC, r.rn ASC";
+
+        return session.createNativeQuery(sql)
+                .addScalar("company_name", StandardBasicTypes.STRING)
+                .addScalar("username", StandardBasicTypes.STRING)
+                .addScalar("total", StandardBasicTypes.LONG)
+                .addScalar("rn", StandardBasicTypes.LONG)
+                .setParameter("k", k)
+                .getResultList();
+    }
+
+    /**
+     * То же, что {@link #findTopEarnersByCompany}, без оконных функций: суммы выплат читаются потоком,
+     * а первые {k} в каждой компании отбираются кучей ограниченного размера
+     */
+    public List<Object[]> findTopEarnersByCompanyStreaming(Session session, int k) {
+        requirePositive(k);
+        String hql = "SELECT c.name, u.username, COALESCE(SUM(p.amount), 0) " +
+                "FROM User u " +
+                "JOIN u.company c " +
+                "LEFT JOIN u.payments p " +
+                "GROUP BY c.name, u.username " +
+                "ORDER BY c.name ASC";
+        Comparator<Object[]> byTotalDesc = Comparator
+                .comparing((Object[] row) -> ((Number) row[2]).longValue(), Comparator.reverseOrder())
+                .thenComparing(row -> (String) row[1]);
+
+        return rankWithinGroups(session.createQuery(hql, Object[].class), k, byTotalDesc,
+                row -> new Object[]{row[0], row[1], ((Number) row[2]).longValue()});
+    }
+
+    /**
+     * Возвращает для каждого сотрудника {k} самых крупных выплат:
+     * username, размер выплаты, место среди выплат сотрудника.
+     * Упорядочено по username, затем по месту
+     */
+    public List<Object[]> findTopPaymentsByUser(Session session, int k) {
+        return prefersWindowFunctions(session)
+                ? findTopPaymentsByUserWindowed(session, k)
+                : findTopPaymentsByUserStreaming(session, k);
+    }
+
+    /**
+     * То же, что {@link #findTopPaymentsByUser}, одним запросом с ROW_NUMBER()
+     */
+    public List<Object[]> findTopPaymentsByUserWindowed(Session session, int k) {
+        requirePositive(k);
+        String sql = "SELECT r.username, r.amount, r.rn " +
+                "FROM (SELECT u.username AS username, p.amount AS amount, " +
+                "             ROW_NUMBER() OVER (PARTITION BY p.receiver_id " +
+                "                                ORDER BY p.amount DESC, p.id ASC) AS rn " +
+                "      FROM payment p " +
+                "      JOIN public.users u ON u.id = p.receiver_id) r " +
+                "WHERE r.rn <= :k " +
+                "ORDER BY r.username ASC, r.rn ASC";
+
+        return session.createNativeQuery(sql)
+                .addScalar("username", StandardBasicTypes.STRING)
+                .addScalar("amount", StandardBasicTypes.INTEGER)
+                .addScalar("rn", StandardBasicTypes.LONG)
+                .setParameter("k", k)
+                .getResultList();
+    }
+
+    /**
+     * То же, что {@link #findTopPaymentsByUser}, без оконных функций: выплаты читаются потоком,
+     * а {k} самых крупных у каждого сотрудника отбираются кучей ограниченного размера
+     */
+    public List<Object[]> findTopPaymentsByUserStreaming(Session session, int k) {
+        requirePositive(k);
+        String hql = "SELECT u.username, p.amount, p.id " +
+                "FROM Payment p " +
+                "JOIN p.receiver u " +
+                "ORDER BY u.username ASC";
+        Comparator<Object[]> byAmountDesc = Comparator
+                .comparing((Object[] row) -> (Integer) row[1], Comparator.reverseOrder())
+                .thenComparing(row -> (Long) row[2]);
+
+        return rankWithinGroups(session.createQuery(hql, Object[].class), k, byAmountDesc,
+                row -> new Object[]{row[0], row[1]});
+    }
+
+    /**
+     * Возвращает место сотрудника в его компании по сумме выплат (1 - наибольшая сумма)
+     * и перцентиль (доля коллег с меньшей суммой выплат, от 0.0 до 1.0)
+     */
+    public Optional<Object[]> findUserRankWithinCompany(Session session, String username) {
+        return prefersWindowFunctions(session)
+                ? findUserRankWithinCompanyWindowed(session, username)
+                : findUserRankWithinCompanyInMemory(session, username);
+    }
+
+    /**
+     * То же, что {@link #findUserRankWithinCompany}, одним запросом с RANK() и PERCENT_RANK()
+     */
+    Optional<Object[]> findUserRankWithinCompanyWindowed(Session session, String username) {
+        String sql = "SELECT r.rnk, r.pct " +
+                "FROM (SELECT u.username AS username, " +
+                "             RANK() OVER (PARTITION BY u.company_id " +
+                "                          ORDER BY COALESCE(SUM(p.amount), 0) DESC) AS rnk, " +
+                "             PERCENT_RANK() OVER (PARTITION BY u.company_id " +
+                "                                  ORDER BY COALESCE(SUM(p.amount), 0) ASC) AS pct " +
+                "      FROM public.users u " +
+                "      LEFT JOIN payment p ON p.receiver_id = u.id " +
+                "      WHERE u.company_id = (SELECT u2.company_id FROM public.users u2 WHERE u2.username = :username) " +
+                "      GROUP BY u.company_id, u.id, u.username) r " +
+                "WHERE r.username = :username";
+
+        List<Object[]> rows = session.createNativeQuery(sql)
+                .addScalar("rnk", StandardBasicTypes.LONG)
+                .addScalar("pct", StandardBasicTypes.DOUBLE)
+                .setParameter("username", username)
+                .getResultList();
+        return rows.stream().findFirst();
+    }
+
+    /**
+     * То же, что {@link #findUserRankWithinCompany}, без оконных функций:
+     * место и перцентиль считаются по суммам выплат всех сотрудников компании
+     */
+    Optional<Object[]> findUserRankWithinCompanyInMemory(Session session, String username) {
+        String hql = "SELECT u.username, COALESCE(SUM(p.amount), 0) " +
+                "FROM User u " +
+                "LEFT JOIN u.payments p " +
+                "WHERE u.company = (SELECT u2.company FROM User u2 WHERE u2.username = :username) " +
+                "GROUP BY u.username";
+        List<Object[]> totals = session.createQuery(hql, Object[].class)
+                .setParameter("username", username)
+                .getResultList();
+
+        Long ownTotal = totals.stream()
+                .filter(row -> username.equals(row[0]))
+                .map(row -> ((Number) row[1]).longValue())
+                .findFirst()
+                .orElse(null);
+        if (ownTotal == null) {
+            return Optional.empty();
+        }
+
+        long greater = totals.stream().filter(row -> ((Number) row[1]).longValue() > ownTotal).count();
+        long less = totals.stream().filter(row -> ((Number) row[1]).longValue() < ownTotal).count();
+        double percentile = totals.size() > 1 ? (double) less / (totals.size() - 1) : 0.0;
+
+        return Optional.of(new Object[]{greater + 1, percentile});
+    }
+
+    /**
+     * Потоково читает строки, упорядоченные по группе (первый столбец), и оставляет в каждой группе
+     * не более {k} лучших по {order}. К каждой строке результата добавляется её место в группе
+     */
+    private List<Object[]> rankWithinGroups(Query<Object[]> query, int k, Comparator<Object[]> order,
+                                            Function<Object[], Object[]> mapper) {
+        List<Object[]> result = new ArrayList<>();
+        BoundedTopK<Object[]> topK = new BoundedTopK<>(k, order);
+        Object currentGroup = null;
+
+        try (ScrollableResults rows = query.setFetchSize(STREAM_FETCH_SIZE).scroll(ScrollMode.FORWARD_ONLY)) {
+            while (rows.next()) {
+                Object[] row = rows.get();
+                if (!topK.isEmpty() && !Objects.equals(currentGroup, row[0])) {
+                    appendRanked(result, topK.drain(), mapper);
+                }
+                currentGroup = row[0];
+                topK.offer(row);
+            }
+        }
+        appendRanked(result, topK.drain(), mapper);
+
+        return result;
+    }
+
+    private void appendRanked(List<Object[]> result, List<Object[]> group, Function<Object[], Object[]> mapper) {
+        long rank = 1;
+        for (Object[] row : group) {
+            Object[] mapped = mapper.apply(row);
+            Object[] ranked = Arrays.copyOf(mapped, mapped.length + 1);
+            ranked[mapped.length] = rank++;
+            result.add(ranked);
+        }
+    }
+
+    private void requirePositive(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+    }
+
+    /**
+     * Оконные функции выбираются только для PostgreSQL: H2 их поддерживает, но по TopKPaymentsBenchmark
+     * выполняет в разы медленнее потокового чтения с отбором кучей
+     */
+    private boolean prefersWindowFunctions(Session session) {
+        Dialect dialect = session.getSessionFactory()
+                .unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices()
+                .getDialect();
+        return dialect instanceof PostgreSQL81Dialect;
+    }
+
     /**
      * Возвращает список: самый высокий размер выплаты среди всех сотрудников
      */
@@ -217,30 +560,132 @@ public class UserDao {
                         user.personalInfo.lastname.contains(lastName))
                 .groupBy(user.profile.language)
                 .select(user.profile.language)
-                .fetch();
+                .fetch()
+                .stream()
+                .map(Language::name)
+                .collect(Collectors.toList());
     }
 
     /**
-     * Возвращает: возраст рождения сотрудника
+     * Возвращает: возраст первого сотрудника, в фамилии которого встречается {lastName}, или -1
      */
     public long findAgeByLastName(Session session, String lastName) {
-        QUser user = QUser.user;
+        return findAgeByLastName(session, lastName, LocalDate.now());
+    }
 
-        JPAQuery<Birthday> query = new JPAQuery<>(session);
-        List<Birthday> birthdays = query
-                .from(user)
-                .where(user.personalInfo.lastname.contains(lastName))
-                .select(user.personalInfo.birthDate)
-                .fetch();
+    /**
+     * То же, что {@link #findAgeByLastName(Session, String)}, возраст на дату {today}.
+     * Возраст считается в базе, из базы читается одно число
+     */
+    public long findAgeByLastName(Session session, String lastName, LocalDate today) {
+        String hql = "SELECT " + ageExpression(today) + " " +
+                "FROM User u " +
+                "WHERE u.personalInfo.lastname LIKE :lastName ESCAPE '!' AND u.personalInfo.birthDate IS NOT NULL " +
+                "ORDER BY u.id ASC";
+
+        return session.createQuery(hql, Integer.class)
+                .setParameter("lastName", "%" + escapeLike(lastName) + "%")
+                .setMaxResults(1)
+                .uniqueResultOptional()
+                .map(Integer::longValue)
+                .orElse(-1L);
+    }
 
-        if (birthdays.isEmpty()) {
-            return -1;
+    /**
+     * Возвращает не более {limit} сотрудников, которым на дату {today} от {minAge} до {maxAge} лет включительно,
+     * от младших к старшим. Возраст переводится в границы даты рождения, поэтому запрос идёт по индексу birth_date
+     */
+    public List<User> findUsersAgedBetween(Session session, int minAge, int maxAge, LocalDate today, int limit) {
+        String hql = "SELECT u FROM User u " +
+                "WHERE u.personalInfo.birthDate > :earliest AND u.personalInfo.birthDate <= :latest " +
+                "ORDER BY u.personalInfo.birthDate DESC, u.id ASC";
+
+        return session.createQuery(hql, User.class)
+                .setParameter("earliest", new Birthday(today.minusYears(maxAge + 1L)))
+                .setParameter("latest", new Birthday(today.minusYears(minAge)))
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Возвращает для каждой компании распределение возрастов на дату {today} по интервалам в {bucketYears} лет:
+     * название компании, начало интервала, число сотрудников. Упорядочено по названию компании и интервалу
+     */
+    public List<Object[]> findAgeHistogramByCompany(Session session, int bucketYears, LocalDate today) {
+        return ageHistogram(session, "u.company.name", bucketYears, today);
+    }
+
+    /**
+     * Возвращает для каждой роли распределение возрастов на дату {today} по интервалам в {bucketYears} лет:
+     * роль, начало интервала, число сотрудников. Упорядочено по роли и интервалу
+     */
+    public List<Object[]> findAgeHistogramByRole(Session session, int bucketYears, LocalDate today) {
+        return ageHistogram(session, "u.role", bucketYears, today);
+    }
+
+    private List<Object[]> ageHistogram(Session session, String group, int bucketYears, LocalDate today) {
+        if (bucketYears < 1) {
+            throw new IllegalArgumentException("bucketYears must be positive: " + bucketYears);
+        }
+        // интервал подставляется литералом: PostgreSQL сопоставляет выражения SELECT и GROUP BY только по тексту,
+        // а параметры в них получили бы разные номера. Начало интервала считается через mod,
+        // потому что HQL-парсер убирает скобки в (age / n) * n
+        String age = ageExpression(today);
+        String bucket = age + " - mod(" + age + ", " + bucketYears + ")";
+        String hql = "SELECT " + group + ", " + bucket + ", COUNT(u) " +
+                "FROM User u " +
+                "WHERE u.personalInfo.birthDate IS NOT NULL " +
+                "GROUP BY " + group + ", " + bucket + " " +
+                "ORDER BY " + group + " ASC, " + bucket + " ASC";
+
+        return session.createQuery(hql, Object[].class).getResultList();
+    }
+
+    /**
+     * Возвращает не более {limit} сотрудников, у которых день рождения в ближайшие {days} дней начиная с {from},
+     * в порядке наступления дня рождения. Окно может переходить через конец года
+     */
+    public List<User> findUpcomingBirthdays(Session session, LocalDate from, int days, int limit) {
+        if (days < 1) {
+            throw new IllegalArgumentException("days must be positive: " + days);
         }
+        String dayOfYear = "(month(u.personalInfo.birthDate) * 100 + day(u.personalInfo.birthDate))";
+        int start = monthDay(from);
+        int end = monthDay(from.plusDays(Math.min(days, 366) - 1L));
+        String window = start <= end && days < 366
+                ? dayOfYear + " BETWEEN " + start + " AND " + end
+                : dayOfYear + " >= " + start + " OR " + dayOfYear + " <= " + end;
+        String hql = "SELECT u FROM User u " +
+                "WHERE u.personalInfo.birthDate IS NOT NULL AND (" + window + ") " +
+                "ORDER BY CASE WHEN " + dayOfYear + " >= " + start + " THEN 0 ELSE 1 END ASC, " +
+                dayOfYear + " ASC, u.id ASC";
+
+        return session.createQuery(hql, User.class)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Возвращает HQL-выражение полного числа лет сотрудника u на дату {today}, как {@link Birthday#getAge()}
+     */
+    private String ageExpression(LocalDate today) {
+        return "(" + today.getYear() + " - year(u.personalInfo.birthDate) - " +
+                "CASE WHEN month(u.personalInfo.birthDate) * 100 + day(u.personalInfo.birthDate) > " +
+                monthDay(today) + " THEN 1 ELSE 0 END)";
+    }
 
-        Birthday firstBirthday = birthdays.get(0);
-        return firstBirthday.getAge();
+    /**
+     * Экранирует символы шаблона LIKE, чтобы {value} искался буквально (символ экранирования - '!')
+     */
+    private String escapeLike(String value) {
+        return value.replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_");
     }
 
+    private int monthDay(LocalDate date) {
+        return date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
 
         public static UserDao getInstance() {
         return INSTANCE;
@@ -0,0 +1,35 @@
+package by.itacademy.hibernate.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "audit_log")
+public class AuditLog implements BaseEntity<Long> {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String entityName;
+
+    private String entityId;
+
+    @Column(nullable = false)
+    private String action;
+
+    private String principal;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+}
@@ -1,6 +1,8 @@
 package by.itacademy.hibernate.entity;
 
 import lombok.*;
+import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.LazyCollectionOption;
 
 import javax.persistence.*;
 import java.util.ArrayList;
@@ -27,5 +29,6 @@ public class Chat implements BaseEntity<Long> {
 
     @Builder.Default
     @OneToMany(mappedBy = "chat")
+    @LazyCollection(LazyCollectionOption.EXTRA)
     private List<UserChat> userChats = new ArrayList<>();
 }
\ No newline at end of file
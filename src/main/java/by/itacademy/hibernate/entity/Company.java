@@ -2,6 +2,9 @@ package by.itacademy.hibernate.entity;
 
 
 import lombok.*;
+import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.LazyCollectionOption;
+import org.hibernate.annotations.OptimisticLock;
 
 import javax.persistence.*;
 import java.util.HashSet;
@@ -21,11 +24,16 @@ public class Company {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
+    @Version
+    private Long version;
+
     @Column(nullable = false, unique = true)
     private String name;
 
     @Builder.Default
     @OneToMany(mappedBy = "company", cascade = CascadeType.ALL, orphanRemoval = true)
+    @LazyCollection(LazyCollectionOption.EXTRA)
+    @OptimisticLock(excluded = true)
     private Set<User> users = new HashSet<>();
 
     public void addUser(User user) {
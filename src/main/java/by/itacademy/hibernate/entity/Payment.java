@@ -12,12 +12,16 @@ import javax.persistence.*;
 @AllArgsConstructor
 @Builder
 @Entity
+@Table(indexes = @Index(name = "payment_receiver_id_idx", columnList = "receiver_id"))
 public class Payment implements BaseEntity<Long> {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Version
+    private Long version;
+
     @Column(nullable = false)
     private Integer amount;
 
@@ -12,7 +12,7 @@ import javax.persistence.*;
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(schema = "public")
+@Table(schema = "public", indexes = @Index(name = "profile_user_id_idx", columnList = "user_id"))
 public class Profile {
 
     @Id
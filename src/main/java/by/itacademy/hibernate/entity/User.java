@@ -2,6 +2,9 @@ package by.itacademy.hibernate.entity;
 
 import javax.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.LazyCollectionOption;
+import org.hibernate.annotations.OptimisticLock;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,13 +16,20 @@ import java.util.List;
 @ToString(exclude = {"company", "profile", "userChats", "payments"})
 @Builder
 @Entity
-@Table(name = "users", schema = "public")
+@Table(name = "users", schema = "public", indexes = {
+        @Index(name = "users_company_id_idx", columnList = "company_id"),
+        @Index(name = "users_firstname_lastname_idx", columnList = "firstname, lastname"),
+        @Index(name = "users_birth_date_idx", columnList = "birth_date")
+})
 public class User implements Comparable<User>, BaseEntity<Long> {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Version
+    private Long version;
+
     @AttributeOverride(name = "birthDate", column = @Column(name = "birth_date"))
     private PersonalInfo personalInfo;
 
@@ -42,10 +52,13 @@ public class User implements Comparable<User>, BaseEntity<Long> {
 
     @Builder.Default
     @OneToMany(mappedBy = "user")
+    @LazyCollection(LazyCollectionOption.EXTRA)
+    @OptimisticLock(excluded = true)
     private List<UserChat> userChats = new ArrayList<>();
 
     @Builder.Default
     @OneToMany(mappedBy = "receiver")
+    @OptimisticLock(excluded = true)
     private List<Payment> payments = new ArrayList<>();
 
     @Override
@@ -13,13 +13,19 @@ import java.time.Instant;
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "users_chat", schema = "public")
+@Table(name = "users_chat", schema = "public",
+        uniqueConstraints = @UniqueConstraint(name = "users_chat_chat_id_user_id_key",
+                columnNames = {"chat_id", "user_id"}),
+        indexes = @Index(name = "users_chat_user_id_idx", columnList = "user_id"))
 public class UserChat extends AuditableEntity<Long> {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Version
+    private Long version;
+
     @ManyToOne
     private User user;
 
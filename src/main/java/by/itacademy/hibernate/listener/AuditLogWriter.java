@@ -0,0 +1,182 @@
+package by.itacademy.hibernate.listener;
+
+import by.itacademy.hibernate.entity.AuditLog;
+import by.itacademy.hibernate.entity.AuditableEntity;
+import by.itacademy.hibernate.util.HibernateUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Журнал аудита только для добавления (таблица audit_log).
+ * После коммита вставки {@link AuditableEntity} запись ставится в очередь, а фоновый поток
+ * пишет очередь пачками через JDBC batch. Поток записи не ждёт базу: при переполнении очереди
+ * запись отбрасывается и учитывается в {@link #getDropped()}. Записи пачки, которую не удалось записать,
+ * теряются и учитываются в {@link #getFailed()}
+ */
+@Slf4j
+public class AuditLogWriter implements PostCommitInsertEventListener, AutoCloseable {
+
+    private static final String INSERT_SQL = "INSERT INTO audit_log (entity_name, entity_id, action, principal, created_at) " +
+            "VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_ACTION = "INSERT";
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final SessionFactory sessionFactory;
+    private final BlockingQueue<AuditLog> queue;
+    private final int batchSize;
+    private final Thread worker;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private volatile boolean running = true;
+
+    private AuditLogWriter(SessionFactory sessionFactory, int capacity, int batchSize) {
+        this.sessionFactory = sessionFactory;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.worker = new Thread(this::drainLoop, "audit-log-writer");
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * Подключает журнал аудита к фабрике сессий и запускает фоновую запись
+     */
+    public static AuditLogWriter attach(SessionFactory sessionFactory, int capacity, int batchSize) {
+        AuditLogWriter writer = new AuditLogWriter(sessionFactory, capacity, batchSize);
+        HibernateUtil.appendListeners(sessionFactory, EventType.POST_COMMIT_INSERT, writer);
+        writer.worker.start();
+        return writer;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (!running || !(event.getEntity() instanceof AuditableEntity<?> entity)) {
+            return;
+        }
+        AuditLog record = AuditLog.builder()
+                .entityName(event.getPersister().getEntityName())
+                .entityId(String.valueOf(event.getId()))
+                .action(INSERT_ACTION)
+                .principal(entity.getCreatedBy())
+                .createdAt(entity.getCreatedAt())
+                .build();
+
+        // Счётчик растёт до offer: иначе awaitWritten может увидеть запись уже записанной, но ещё не поставленной
+        enqueued.increment();
+        if (!queue.offer(record)) {
+            enqueued.decrement();
+            dropped.increment();
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return AuditableEntity.class.isAssignableFrom(persister.getMappedClass());
+    }
+
+    private void drainLoop() {
+        List<AuditLog> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                AuditLog first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                failed.add(batch.size());
+                log.error("Failed to write {} audit records", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<AuditLog> batch) {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.doWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                    for (AuditLog record : batch) {
+                        statement.setString(1, record.getEntityName());
+                        statement.setString(2, record.getEntityId());
+                        statement.setString(3, record.getAction());
+                        statement.setString(4, record.getPrincipal());
+                        statement.setTimestamp(5, Timestamp.from(record.getCreatedAt()));
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
+            session.getTransaction().commit();
+        }
+        written.add(batch.size());
+        batches.increment();
+    }
+
+    /**
+     * Ждёт, пока все поставленные в очередь записи будут обработаны: записаны в базу или потеряны из-за ошибки
+     */
+    public boolean awaitWritten(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (written.sum() + failed.sum() < enqueued.sum()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return true;
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * Останавливает приём новых записей и дописывает очередь
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        worker.join();
+    }
+}
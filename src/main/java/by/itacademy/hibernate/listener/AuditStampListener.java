@@ -0,0 +1,39 @@
+package by.itacademy.hibernate.listener;
+
+import by.itacademy.hibernate.entity.AuditableEntity;
+import by.itacademy.hibernate.util.AuditContext;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreInsertEventListener;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Заполняет createdAt и createdBy у всех наследников {@link AuditableEntity} непосредственно перед вставкой.
+ * Единственное место проставления аудита для вставок через Session: сущностям не нужны собственные @PrePersist.
+ * StatelessSession.insert событий не порождает, поэтому при такой вставке поля заполняет вызывающий код
+ */
+public class AuditStampListener implements PreInsertEventListener {
+
+    private static final String CREATED_AT = "createdAt";
+    private static final String CREATED_BY = "createdBy";
+
+    @Override
+    public boolean onPreInsert(PreInsertEvent event) {
+        if (event.getEntity() instanceof AuditableEntity<?> entity) {
+            if (entity.getCreatedAt() == null) {
+                entity.setCreatedAt(Instant.now());
+            }
+            if (entity.getCreatedBy() == null) {
+                entity.setCreatedBy(AuditContext.currentPrincipal());
+            }
+
+            List<String> propertyNames = Arrays.asList(event.getPersister().getPropertyNames());
+            Object[] state = event.getState();
+            state[propertyNames.indexOf(CREATED_AT)] = entity.getCreatedAt();
+            state[propertyNames.indexOf(CREATED_BY)] = entity.getCreatedBy();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,202 @@
+package by.itacademy.hibernate.listener;
+
+import by.itacademy.hibernate.entity.Company;
+import by.itacademy.hibernate.entity.Payment;
+import by.itacademy.hibernate.entity.User;
+import by.itacademy.hibernate.entity.UserChat;
+import by.itacademy.hibernate.util.ChangeEvent;
+import by.itacademy.hibernate.util.ChangeEvent.Operation;
+import by.itacademy.hibernate.util.ChangeLog;
+import by.itacademy.hibernate.util.HibernateUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Публикует в {@link ChangeLog} закоммиченные вставки, обновления и удаления User, Payment, Company и UserChat,
+ * чтобы потребители читали изменения по порядку вместо периодического перечитывания таблиц.
+ * Откаченные транзакции в журнал не попадают. Массовые HQL/SQL операции и StatelessSession событий не порождают.
+ * Порядок изменений одной сущности задаёт {@link ChangeEvent#getVersion()}, а не номер записи.
+ * <p>
+ * Если запись в журнал не удалась, публикация останавливается: журнал остаётся непрерывным префиксом
+ * изменений без пропусков, а все последующие изменения не публикуются и учитываются в {@link #getFailures()}.
+ * Потребителям после остановки нужен новый снимок данных
+ */
+@Slf4j
+public class ChangeFeedPublisher implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+
+    private static final Set<Class<?>> PUBLISHED = Set.of(User.class, Payment.class, Company.class, UserChat.class);
+
+    private final ChangeLog changeLog;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile RuntimeException failure;
+
+    private ChangeFeedPublisher(ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    /**
+     * Подключает публикацию изменений к фабрике сессий
+     */
+    public static ChangeFeedPublisher attach(SessionFactory sessionFactory, ChangeLog changeLog) {
+        ChangeFeedPublisher publisher = new ChangeFeedPublisher(changeLog);
+        HibernateUtil.appendListeners(sessionFactory, EventType.POST_COMMIT_INSERT, publisher);
+        HibernateUtil.appendListeners(sessionFactory, EventType.POST_COMMIT_UPDATE, publisher);
+        HibernateUtil.appendListeners(sessionFactory, EventType.POST_COMMIT_DELETE, publisher);
+        return publisher;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        publish(event.getPersister(), event.getSession(), event.getId(), Operation.INSERT,
+                event.getState(), null);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        publish(event.getPersister(), event.getSession(), event.getId(), Operation.UPDATE,
+                event.getState(), event.getDirtyProperties());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        publish(event.getPersister(), event.getSession(), event.getId(), Operation.DELETE,
+                event.getDeletedState(), null);
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return PUBLISHED.contains(persister.getMappedClass());
+    }
+
+    private void publish(EntityPersister persister, SharedSessionContractImplementor session, Object id,
+                         Operation operation, Object[] state, int[] dirtyProperties) {
+        if (failure != null) {
+            failures.increment();
+            return;
+        }
+        ChangeEvent event = ChangeEvent.builder()
+                .timestamp(Instant.now())
+                .entityName(persister.getEntityName())
+                .entityId(String.valueOf(id))
+                .operation(operation)
+                .version(version(persister, state))
+                .state(describe(persister, session, state, dirtyProperties))
+                .build();
+        synchronized (this) {
+            if (failure != null) {
+                failures.increment();
+                return;
+            }
+            try {
+                changeLog.append(event);
+                published.increment();
+            } catch (RuntimeException e) {
+                failure = e;
+                failures.increment();
+                log.error("Change feed stopped: failed to publish {} of {}#{}", operation,
+                        persister.getEntityName(), id, e);
+            }
+        }
+    }
+
+    private static Long version(EntityPersister persister, Object[] state) {
+        if (!persister.isVersioned() || state == null) {
+            return null;
+        }
+        Object version = state[persister.getVersionProperty()];
+        return version == null ? null : ((Number) version).longValue();
+    }
+
+    /**
+     * Возвращает значения свойств строками; связи заменяются id связанной сущности,
+     * коллекции и обратные one-to-one пропускаются
+     */
+    private Map<String, String> describe(EntityPersister persister, SharedSessionContractImplementor session,
+                                         Object[] state, int[] dirtyProperties) {
+        Map<String, String> description = new LinkedHashMap<>();
+        if (state == null) {
+            return description;
+        }
+        String[] names = persister.getPropertyNames();
+        Type[] types = persister.getPropertyTypes();
+        int count = dirtyProperties == null ? names.length : dirtyProperties.length;
+        for (int i = 0; i < count; i++) {
+            int property = dirtyProperties == null ? i : dirtyProperties[i];
+            Type type = types[property];
+            if (type.isCollectionType() || type.isEntityType() && ((EntityType) type).isOneToOne()) {
+                continue;
+            }
+            Object value = state[property];
+            if (value != null && type.isEntityType()) {
+                value = identifier((EntityType) type, session, value);
+            }
+            description.put(names[property], value == null ? null : value.toString());
+        }
+        return description;
+    }
+
+    private Object identifier(EntityType type, SharedSessionContractImplementor session, Object entity) {
+        if (entity instanceof HibernateProxy proxy) {
+            return proxy.getHibernateLazyInitializer().getIdentifier();
+        }
+        return session.getFactory()
+                .getMetamodel()
+                .entityPersister(type.getAssociatedEntityName())
+                .getIdentifier(entity, session);
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Возвращает: true, если публикация остановлена из-за ошибки записи в журнал
+     */
+    public boolean isStopped() {
+        return failure != null;
+    }
+
+    /**
+     * Возвращает: ошибку записи, остановившую публикацию, или null
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+}
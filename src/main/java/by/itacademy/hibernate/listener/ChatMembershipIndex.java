@@ -0,0 +1,281 @@
+package by.itacademy.hibernate.listener;
+
+import by.itacademy.hibernate.entity.UserChat;
+import by.itacademy.hibernate.util.HibernateUtil;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.roaringbitmap.longlong.PeekableLongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Индекс участников чатов в памяти: для каждого чата - сжатая битовая карта (Roaring) id сотрудников.
+ * При подключении заполняется из таблицы users_chat, затем поддерживается слушателями после коммита
+ * вставки и удаления {@link UserChat}, поэтому видит только закоммиченные изменения.
+ * Массовые HQL/SQL операции и StatelessSession событий не порождают и индексом не учитываются.
+ * Пара (чат, сотрудник) уникальна в users_chat, поэтому одного бита на пару достаточно.
+ * <p>
+ * Слушатели после коммита вызываются в потоках транзакций в произвольном порядке. Из-за уникального ключа
+ * новая запись пары вставляется только после удаления предыдущей и получает больший id,
+ * поэтому для недавно изменённых пар индекс помнит id последней применённой записи и пропускает
+ * запоздавшие события о более старых записях. Изменение помнится {@value #CHANGE_RETENTION_SECONDS} с -
+ * предполагается, что запоздавшее событие приходит раньше, чем истекает этот срок
+ */
+public class ChatMembershipIndex implements PostCommitInsertEventListener, PostCommitDeleteEventListener {
+
+    private static final int LOAD_FETCH_SIZE = 10_000;
+    private static final long CHANGE_RETENTION_SECONDS = 60;
+    private static final int CHANGES_PER_PRUNE = 10_000;
+
+    private final Map<Long, Members> chats = new ConcurrentHashMap<>();
+
+    /**
+     * Последнее применённое изменение недавно изменённых пар (чат, сотрудник)
+     */
+    private final Map<Membership, Change> changes = new ConcurrentHashMap<>();
+    private final AtomicInteger changesSincePrune = new AtomicInteger();
+    private volatile boolean loading;
+
+    ChatMembershipIndex() {
+    }
+
+    /**
+     * Подключает индекс к фабрике сессий и загружает в него существующих участников чатов.
+     * Слушатели регистрируются до загрузки; снимок запроса загрузки может быть старше изменений,
+     * закоммиченных во время неё, поэтому строка снимка не применяется, если по её паре уже пришло
+     * изменение той же или более новой записи
+     */
+    public static ChatMembershipIndex attach(SessionFactory sessionFactory) {
+        ChatMembershipIndex index = new ChatMembershipIndex();
+        index.startLoading();
+        HibernateUtil.appendListeners(sessionFactory, EventType.POST_COMMIT_INSERT, index);
+        HibernateUtil.appendListeners(sessionFactory, EventType.POST_COMMIT_DELETE, index);
+        try (StatelessSession session = sessionFactory.openStatelessSession();
+             ScrollableResults rows = session.createQuery("SELECT uc.chat.id, uc.user.id, uc.id FROM UserChat uc")
+                     .setFetchSize(LOAD_FETCH_SIZE)
+                     .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (rows.next()) {
+                index.loaded((Long) rows.get(0), (Long) rows.get(1), (Long) rows.get(2));
+            }
+        }
+        index.finishLoading();
+        return index;
+    }
+
+    void startLoading() {
+        loading = true;
+    }
+
+    void loaded(Long chatId, Long userId, Long rowId) {
+        changes.compute(new Membership(chatId, userId), (membership, change) -> {
+            if (change == null || change.rowId() < rowId) {
+                members(chatId).add(userId);
+            }
+            return change;
+        });
+    }
+
+    void finishLoading() {
+        loading = false;
+        chats.values().forEach(Members::optimize);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        UserChat userChat = (UserChat) event.getEntity();
+        added(userChat.getChat().getId(), userChat.getUser().getId(), (Long) event.getId());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        UserChat userChat = (UserChat) event.getEntity();
+        removed(userChat.getChat().getId(), userChat.getUser().getId(), (Long) event.getId());
+    }
+
+    void added(Long chatId, Long userId, Long rowId) {
+        apply(chatId, userId, rowId, true);
+    }
+
+    void removed(Long chatId, Long userId, Long rowId) {
+        apply(chatId, userId, rowId, false);
+    }
+
+    /**
+     * Вставка записи применяется, если по паре не было изменений этой или более новой записи,
+     * удаление - если не было изменений более новой записи
+     */
+    private void apply(Long chatId, Long userId, Long rowId, boolean present) {
+        changes.compute(new Membership(chatId, userId), (membership, change) -> {
+            if (change != null && (change.rowId() > rowId || change.rowId() == rowId && present)) {
+                return change;
+            }
+            if (present) {
+                members(chatId).add(userId);
+            } else {
+                members(chatId).remove(userId);
+            }
+            return new Change(rowId, System.nanoTime());
+        });
+        if (changesSincePrune.incrementAndGet() >= CHANGES_PER_PRUNE) {
+            changesSincePrune.set(0);
+            prune();
+        }
+    }
+
+    private void prune() {
+        if (loading) {
+            return;
+        }
+        long expiredBefore = System.nanoTime() - TimeUnit.SECONDS.toNanos(CHANGE_RETENTION_SECONDS);
+        changes.values().removeIf(change -> change.appliedAt() - expiredBefore < 0);
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return UserChat.class.isAssignableFrom(persister.getMappedClass());
+    }
+
+    private Members members(Long chatId) {
+        return chats.computeIfAbsent(chatId, id -> new Members());
+    }
+
+    public long countMembers(Long chatId) {
+        Members members = chats.get(chatId);
+        return members == null ? 0 : members.count();
+    }
+
+    public boolean isMember(Long chatId, Long userId) {
+        Members members = chats.get(chatId);
+        return members != null && members.contains(userId);
+    }
+
+    /**
+     * Возвращает не более {limit} id участников чата, больших {afterUserId}, по возрастанию.
+     * Для первой страницы передаётся null, для следующей - последний id предыдущей страницы
+     */
+    public List<Long> findMemberIds(Long chatId, Long afterUserId, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+        Members members = chats.get(chatId);
+        return members == null ? new ArrayList<>() : members.page(afterUserId == null ? 0 : afterUserId + 1, limit);
+    }
+
+    /**
+     * Возвращает: примерный объём памяти битовой карты чата в байтах
+     */
+    public long sizeInBytes(Long chatId) {
+        Members members = chats.get(chatId);
+        return members == null ? 0 : members.sizeInBytes();
+    }
+
+    private record Membership(long chatId, long userId) {
+    }
+
+    private record Change(long rowId, long appliedAt) {
+    }
+
+    /**
+     * Битовая карта не потокобезопасна: чтение и запись разделяются блокировкой.
+     * Число участников хранится отдельно, чтобы не обходить контейнеры карты при каждом подсчёте
+     */
+    private static class Members {
+
+        private final Roaring64Bitmap userIds = new Roaring64Bitmap();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile long count;
+
+        void add(long userId) {
+            lock.writeLock().lock();
+            try {
+                if (!userIds.contains(userId)) {
+                    userIds.addLong(userId);
+                    count++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(long userId) {
+            lock.writeLock().lock();
+            try {
+                if (userIds.contains(userId)) {
+                    userIds.removeLong(userId);
+                    count--;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void optimize() {
+            lock.writeLock().lock();
+            try {
+                userIds.runOptimize();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        long count() {
+            return count;
+        }
+
+        boolean contains(long userId) {
+            lock.readLock().lock();
+            try {
+                return userIds.contains(userId);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        List<Long> page(long fromUserId, int limit) {
+            List<Long> page = new ArrayList<>(limit);
+            lock.readLock().lock();
+            try {
+                PeekableLongIterator iterator = userIds.getLongIteratorFrom(fromUserId);
+                while (page.size() < limit && iterator.hasNext()) {
+                    page.add(iterator.next());
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return page;
+        }
+
+        long sizeInBytes() {
+            lock.readLock().lock();
+            try {
+                return userIds.getLongSizeInBytes();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
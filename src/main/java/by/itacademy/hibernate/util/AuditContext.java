@@ -0,0 +1,40 @@
+package by.itacademy.hibernate.util;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Текущий пользователь единицы работы, от имени которого создаются записи.
+ * Хранится в ThreadLocal, поэтому чтение при каждой вставке ничего не стоит
+ */
+@UtilityClass
+public class AuditContext {
+
+    public static final String SYSTEM = "system";
+
+    private final ThreadLocal<String> PRINCIPAL = new ThreadLocal<>();
+
+    /**
+     * Устанавливает пользователя до закрытия возвращённого Scope, после чего восстанавливает предыдущего
+     */
+    public Scope open(String principal) {
+        String previous = PRINCIPAL.get();
+        PRINCIPAL.set(principal);
+        return () -> {
+            if (previous == null) {
+                PRINCIPAL.remove();
+            } else {
+                PRINCIPAL.set(previous);
+            }
+        };
+    }
+
+    public String currentPrincipal() {
+        String principal = PRINCIPAL.get();
+        return principal == null ? SYSTEM : principal;
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
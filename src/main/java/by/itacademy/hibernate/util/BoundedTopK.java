@@ -0,0 +1,49 @@
+package by.itacademy.hibernate.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Хранит не более {k} лучших элементов потока (куча ограниченного размера).
+ * Лучшим считается элемент, который идёт первым по переданному компаратору.
+ */
+public class BoundedTopK<T> {
+
+    private final int k;
+    private final Comparator<? super T> order;
+    private final PriorityQueue<T> heap;
+
+    public BoundedTopK(int k, Comparator<? super T> order) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.k = k;
+        this.order = order;
+        this.heap = new PriorityQueue<>(k + 1, order.reversed());
+    }
+
+    public void offer(T element) {
+        if (heap.size() < k) {
+            heap.add(element);
+        } else if (order.compare(element, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(element);
+        }
+    }
+
+    public boolean isEmpty() {
+        return heap.isEmpty();
+    }
+
+    /**
+     * Возвращает накопленные элементы, начиная с лучшего, и очищает кучу
+     */
+    public List<T> drain() {
+        List<T> result = new ArrayList<>(heap);
+        result.sort(order);
+        heap.clear();
+        return result;
+    }
+}
@@ -0,0 +1,39 @@
+package by.itacademy.hibernate.util;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Закоммиченное изменение сущности в журнале изменений {@link ChangeLog}.
+ * state - значения свойств: при вставке и удалении все свойства, при обновлении только изменённые.
+ * Связи записываются id связанной сущности, коллекции не записываются.
+ * <p>
+ * Слушатели после коммита вызываются в потоках транзакций, поэтому порядок записей в журнале может
+ * отличаться от порядка коммитов. Порядок изменений одной сущности задаёт version
+ */
+@Value
+@Builder
+public class ChangeEvent {
+
+    /**
+     * Порядковый номер записи в журнале; присваивается журналом, при записи значение игнорируется
+     */
+    long offset;
+    Instant timestamp;
+    String entityName;
+    String entityId;
+    Operation operation;
+    /**
+     * Версия сущности (@Version) после изменения; удаление несёт версию последнего изменения
+     * и следует за ним. null - сущность не версионируется
+     */
+    Long version;
+    Map<String, String> state;
+
+    public enum Operation {
+        INSERT, UPDATE, DELETE
+    }
+}
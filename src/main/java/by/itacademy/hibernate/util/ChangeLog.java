@@ -0,0 +1,311 @@
+package by.itacademy.hibernate.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений только для добавления, отображённый в память.
+ * Журнал - каталог сегментов фиксированного размера; имя сегмента - номер его первой записи.
+ * Запись сегмента: длина (int), CRC32 данных (int), номер записи (long), данные {@link ChangeEvent}.
+ * Длина пишется последней, поэтому читатель ({@link ChangeLogReader}), в том числе из другого процесса,
+ * никогда не видит недописанную запись: нулевая длина или неверная контрольная сумма означают конец журнала.
+ * Строки в данных записи хранятся как длина (int) и байты UTF-8.
+ * Номера записей монотонно растут и сохраняются между перезапусками.
+ * Запись попадает в page cache сразу, на диск - при {@link #flush()} или по усмотрению ОС.
+ * Писатель у журнала один: на время работы он держит эксклюзивную блокировку файла {@value #LOCK_FILE} в каталоге,
+ * второй писатель (в том числе из другого процесса) падает при открытии
+ */
+public class ChangeLog implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    static final int HEADER_SIZE = 16;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String LOCK_FILE = "writer.lock";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FileChannel lockChannel;
+
+    private MappedByteBuffer segment;
+    private int position;
+    private volatile long nextOffset;
+
+    public ChangeLog(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public ChangeLog(Path directory, int segmentSize) {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize is too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            lockChannel = lock(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            List<Long> bases = segmentBases(directory);
+            if (bases.isEmpty()) {
+                openSegment(0);
+            } else {
+                recover(bases.get(bases.size() - 1));
+            }
+        } catch (IOException e) {
+            closeQuietly(lockChannel, e);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            closeQuietly(lockChannel, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Дописывает событие в журнал.
+     * Возвращает: номер записи
+     */
+    public synchronized long append(ChangeEvent event) {
+        byte[] payload = encode(event);
+        if (HEADER_SIZE + payload.length > segmentSize) {
+            throw new IllegalArgumentException("Change event of " + payload.length + " bytes does not fit a segment");
+        }
+        try {
+            if (position + HEADER_SIZE + payload.length > segment.capacity()) {
+                openSegment(nextOffset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long offset = nextOffset;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        segment.putLong(position + 8, offset);
+        segment.put(position + HEADER_SIZE, payload);
+        segment.putInt(position + 4, (int) crc.getValue());
+        segment.putInt(position, payload.length);
+
+        position += HEADER_SIZE + payload.length;
+        nextOffset = offset + 1;
+        return offset;
+    }
+
+    /**
+     * Возвращает: номер, который получит следующая запись
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Сбрасывает текущий сегмент на диск
+     */
+    public synchronized void flush() {
+        segment.force();
+    }
+
+    /**
+     * Сбрасывает текущий сегмент на диск и снимает блокировку писателя
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            try {
+                lockChannel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Возвращает: канал файла блокировки, на котором удерживается эксклюзивная блокировка.
+     * Закрытие канала снимает блокировку
+     */
+    private static FileChannel lock(Path directory) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(channel, e);
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException("Change log is already open for writing: " + directory);
+        }
+        return channel;
+    }
+
+    private static void closeQuietly(FileChannel channel, Exception cause) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void openSegment(long baseOffset) throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        segment = map(segmentPath(directory, baseOffset), segmentSize);
+        position = 0;
+        nextOffset = baseOffset;
+    }
+
+    /**
+     * Находит конец последнего сегмента; хвост недописанной при сбое записи затирается нулями
+     */
+    private void recover(long baseOffset) throws IOException {
+        Path path = segmentPath(directory, baseOffset);
+        segment = map(path, (int) Math.max(segmentSize, Files.size(path)));
+        position = 0;
+        nextOffset = baseOffset;
+
+        int length;
+        while ((length = recordLength(segment, position, nextOffset)) >= 0) {
+            position += HEADER_SIZE + length;
+            nextOffset++;
+        }
+        segment.put(position, new byte[segment.capacity() - position]);
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    static Path segmentPath(Path directory, long baseOffset) {
+        return directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Возвращает: номера первых записей всех сегментов по возрастанию
+     */
+    static List<Long> segmentBases(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Возвращает: длину данных записи с номером {expectedOffset} в позиции {position}
+     * или -1, если там нет целой записи с этим номером
+     */
+    static int recordLength(ByteBuffer segment, int position, long expectedOffset) {
+        if (position + HEADER_SIZE > segment.capacity()) {
+            return -1;
+        }
+        int length = segment.getInt(position);
+        if (length <= 0 || position + HEADER_SIZE + length > segment.capacity()
+                || segment.getLong(position + 8) != expectedOffset) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(segment.slice(position + HEADER_SIZE, length));
+        return (int) crc.getValue() == segment.getInt(position + 4) ? length : -1;
+    }
+
+    static ChangeEvent decode(ByteBuffer segment, int position, int length) {
+        byte[] payload = new byte[length];
+        segment.get(position + HEADER_SIZE, payload);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            ChangeEvent.ChangeEventBuilder event = ChangeEvent.builder()
+                    .offset(segment.getLong(position + 8))
+                    .timestamp(Instant.ofEpochSecond(in.readLong(), in.readInt()))
+                    .entityName(readString(in))
+                    .entityId(readString(in))
+                    .operation(ChangeEvent.Operation.values()[in.readByte()])
+                    .version(in.readBoolean() ? in.readLong() : null);
+            int properties = in.readInt();
+            Map<String, String> state = new LinkedHashMap<>(properties * 2);
+            for (int i = 0; i < properties; i++) {
+                state.put(readString(in), in.readBoolean() ? readString(in) : null);
+            }
+            return event.state(state).build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encode(ChangeEvent event) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(event.getTimestamp().getEpochSecond());
+            out.writeInt(event.getTimestamp().getNano());
+            writeString(out, event.getEntityName());
+            writeString(out, event.getEntityId());
+            out.writeByte(event.getOperation().ordinal());
+            out.writeBoolean(event.getVersion() != null);
+            if (event.getVersion() != null) {
+                out.writeLong(event.getVersion());
+            }
+            out.writeInt(event.getState().size());
+            for (Map.Entry<String, String> property : event.getState().entrySet()) {
+                writeString(out, property.getKey());
+                out.writeBoolean(property.getValue() != null);
+                if (property.getValue() != null) {
+                    writeString(out, property.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * В отличие от {@link DataOutputStream#writeUTF(String)} не ограничивает строку 64 КБ
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
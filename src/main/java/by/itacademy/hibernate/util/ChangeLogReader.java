@@ -0,0 +1,130 @@
+package by.itacademy.hibernate.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Читает журнал {@link ChangeLog} начиная с заданного номера записи.
+ * Потребитель сохраняет {@link #getNextOffset()} после обработки очередной пачки и при перезапуске
+ * создаёт читатель с этого номера, получая только новые изменения.
+ * Читатель не блокирует писателя и может работать в другом процессе
+ */
+public class ChangeLogReader implements AutoCloseable {
+
+    private final Path directory;
+
+    private MappedByteBuffer segment;
+    private long segmentBase;
+    private int position;
+    private long nextOffset;
+
+    public ChangeLogReader(Path directory, long fromOffset) {
+        this.directory = directory;
+        try {
+            List<Long> bases = ChangeLog.segmentBases(directory);
+            long base = bases.isEmpty() ? 0 : bases.get(0);
+            for (Long candidate : bases) {
+                if (candidate <= fromOffset) {
+                    base = candidate;
+                }
+            }
+            open(base);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        skipTo(fromOffset);
+    }
+
+    /**
+     * Возвращает не более {maxEvents} следующих записей; пустой список, если новых записей пока нет
+     */
+    public List<ChangeEvent> poll(int maxEvents) {
+        List<ChangeEvent> events = new ArrayList<>(Math.min(maxEvents, 1_024));
+        while (events.size() < maxEvents) {
+            int length = nextRecordLength();
+            if (length < 0) {
+                break;
+            }
+            events.add(ChangeLog.decode(segment, position, length));
+            advance(length);
+        }
+        return events;
+    }
+
+    /**
+     * Возвращает: номер следующей непрочитанной записи - позицию, с которой продолжит чтение новый читатель
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+    }
+
+    private void skipTo(long offset) {
+        while (nextOffset < offset) {
+            int length = nextRecordLength();
+            if (length < 0) {
+                throw new IllegalArgumentException("Offset " + offset + " is beyond the end of the change log");
+            }
+            advance(length);
+        }
+    }
+
+    /**
+     * Возвращает: длину следующей записи или -1. Если записи нет, а писатель уже начал следующий сегмент,
+     * переходит в него; если сегмент ещё не был создан или был отображён до того, как писатель задал
+     * его размер, отображает его заново
+     */
+    private int nextRecordLength() {
+        int length = segment == null ? -1 : ChangeLog.recordLength(segment, position, nextOffset);
+        if (length >= 0) {
+            return length;
+        }
+        try {
+            if (position > 0 && Files.exists(ChangeLog.segmentPath(directory, nextOffset))) {
+                open(nextOffset);
+            } else if (position == 0 && isTruncated()) {
+                open(segmentBase);
+            } else {
+                return -1;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return segment == null ? -1 : ChangeLog.recordLength(segment, position, nextOffset);
+    }
+
+    private boolean isTruncated() throws IOException {
+        Path path = ChangeLog.segmentPath(directory, segmentBase);
+        return Files.exists(path) && (segment == null || segment.capacity() < Files.size(path));
+    }
+
+    private void advance(int length) {
+        position += ChangeLog.HEADER_SIZE + length;
+        nextOffset++;
+    }
+
+    private void open(long baseOffset) throws IOException {
+        Path path = ChangeLog.segmentPath(directory, baseOffset);
+        segmentBase = baseOffset;
+        position = 0;
+        nextOffset = baseOffset;
+        if (!Files.exists(path)) {
+            segment = null;
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
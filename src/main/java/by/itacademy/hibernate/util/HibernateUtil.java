@@ -1,18 +1,42 @@
 package by.itacademy.hibernate.util;
 
 import by.itacademy.hibernate.convertor.BirthdayConvertor;
+import by.itacademy.hibernate.listener.AuditStampListener;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+
+import java.util.Properties;
 
 public class HibernateUtil {
     public static SessionFactory buildSessionFactory() {
+        return buildSessionFactory(new Properties());
+    }
+
+    /**
+     * Строит фабрику по hibernate.cfg.xml, переопределяя указанные свойства (например, url отдельного шарда)
+     */
+    public static SessionFactory buildSessionFactory(Properties overrides) {
         Configuration configuration = new Configuration().configure();
         configuration.configure();
+        configuration.addProperties(overrides);
         configuration.addAttributeConverter(new BirthdayConvertor());
 //        configuration.registerTypeOverride(new JsonBinaryType());
 //        configuration.addAnnotatedClass(User.class);
         configuration.setPhysicalNamingStrategy(new CamelCaseToUnderscoresNamingStrategy());
-        return configuration.buildSessionFactory();
+        SessionFactory sessionFactory = configuration.buildSessionFactory();
+        appendListeners(sessionFactory, EventType.PRE_INSERT, new AuditStampListener());
+        return sessionFactory;
+    }
+
+    @SafeVarargs
+    public static <T> void appendListeners(SessionFactory sessionFactory, EventType<T> type, T... listeners) {
+        sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class)
+                .appendListeners(type, listeners);
     }
 }
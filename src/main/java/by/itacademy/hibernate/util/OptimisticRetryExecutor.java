@@ -0,0 +1,154 @@
+package by.itacademy.hibernate.util;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.dialect.lock.OptimisticEntityLockException;
+
+import javax.persistence.OptimisticLockException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Выполняет единицу работы в отдельной сессии и транзакции.
+ * При конфликте версий (@Version) откатывает транзакцию и повторяет её
+ * с экспоненциальной задержкой и случайным разбросом (full jitter)
+ */
+public class OptimisticRetryExecutor {
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 10;
+    private static final Duration DEFAULT_BASE_BACKOFF = Duration.ofMillis(5);
+    private static final Duration DEFAULT_MAX_BACKOFF = Duration.ofMillis(500);
+
+    private final SessionFactory sessionFactory;
+    private final int maxAttempts;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public OptimisticRetryExecutor(SessionFactory sessionFactory) {
+        this(sessionFactory, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    public OptimisticRetryExecutor(SessionFactory sessionFactory, int maxAttempts,
+                                   Duration baseBackoff, Duration maxBackoff) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        this.sessionFactory = sessionFactory;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffNanos = baseBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+    }
+
+    public void run(Consumer<Session> work) {
+        execute(session -> {
+            work.accept(session);
+            return null;
+        });
+    }
+
+    public <T> T execute(Function<Session, T> work) {
+        transactions.increment();
+
+        for (int attempt = 1; ; attempt++) {
+            attempts.increment();
+            try {
+                return executeOnce(work);
+            } catch (RuntimeException e) {
+                if (!isConflict(e)) {
+                    failures.increment();
+                    throw e;
+                }
+                conflicts.increment();
+                if (attempt == maxAttempts) {
+                    failures.increment();
+                    throw e;
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    private <T> T executeOnce(Function<Session, T> work) {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            try {
+                T result = work.apply(session);
+                session.getTransaction().commit();
+                return result;
+            } catch (RuntimeException e) {
+                if (session.getTransaction().isActive()) {
+                    session.getTransaction().rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(attempt - 1, 30));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backing off", e);
+        }
+    }
+
+    private boolean isConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StaleStateException
+                    || cause instanceof OptimisticLockException
+                    || cause instanceof OptimisticEntityLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getTransactions() {
+        return transactions.sum();
+    }
+
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getRetries() {
+        return attempts.sum() - transactions.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Возвращает: долю попыток, завершившихся конфликтом версий
+     */
+    public double getConflictRate() {
+        long total = attempts.sum();
+        return total == 0 ? 0.0 : (double) conflicts.sum() / total;
+    }
+
+    /**
+     * Возвращает: среднее число повторов на одну единицу работы
+     */
+    public double getRetryRate() {
+        long total = transactions.sum();
+        return total == 0 ? 0.0 : (double) getRetries() / total;
+    }
+}
@@ -0,0 +1,143 @@
+package by.itacademy.hibernate.util;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Набор фабрик сессий, между которыми распределены сотрудники.
+ * Шард сотрудника определяется хешем username; выплаты, профиль и участие в чатах хранятся в том же шарде.
+ * Компании и чаты - справочные данные, они копируются во все шарды
+ */
+public class ShardedSessionFactory implements AutoCloseable {
+
+    private final List<SessionFactory> shards;
+    private final ExecutorService executor;
+
+    public ShardedSessionFactory(List<SessionFactory> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        this.executor = Executors.newFixedThreadPool(shards.size());
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public int shardIndex(String username) {
+        return Math.floorMod(murmurMix(username), shards.size());
+    }
+
+    public SessionFactory shardFor(String username) {
+        return shards.get(shardIndex(username));
+    }
+
+    /**
+     * Выполняет работу в транзакции шарда, которому принадлежит сотрудник
+     */
+    public <T> T inShardOf(String username, Function<Session, T> work) {
+        return inTransaction(shardFor(username), work, false);
+    }
+
+    /**
+     * Выполняет одну и ту же работу в каждом шарде (например, запись справочных данных)
+     */
+    public void inEveryShard(Consumer<Session> work) {
+        scatter(session -> {
+            work.accept(session);
+            return null;
+        }, false);
+    }
+
+    /**
+     * Параллельно выполняет запрос только для чтения во всех шардах.
+     * Возвращает: результаты в порядке шардов
+     */
+    public <T> List<T> scatter(Function<Session, T> query) {
+        return scatter(query, true);
+    }
+
+    private <T> List<T> scatter(Function<Session, T> work, boolean readOnly) {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (SessionFactory shard : shards) {
+            futures.add(executor.submit(() -> inTransaction(shard, work, readOnly)));
+        }
+
+        List<T> results = new ArrayList<>(shards.size());
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for shards", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private <T> T inTransaction(SessionFactory shard, Function<Session, T> work, boolean readOnly) {
+        try (Session session = shard.openSession()) {
+            session.setDefaultReadOnly(readOnly);
+            session.beginTransaction();
+            try {
+                T result = work.apply(session);
+                session.getTransaction().commit();
+                return result;
+            } catch (RuntimeException e) {
+                if (session.getTransaction().isActive()) {
+                    session.getTransaction().rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 32-битный MurmurHash3 по байтам ключа: String.hashCode плохо перемешивает младшие биты
+     */
+    private static int murmurMix(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = 0;
+        int i = 0;
+        for (; i + 4 <= bytes.length; i += 4) {
+            int k = (bytes[i] & 0xff) | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff) << 16 | bytes[i + 3] << 24;
+            hash = Integer.rotateLeft(hash ^ mixK(k), 13) * 5 + 0xe6546b64;
+        }
+        int tail = 0;
+        for (int shift = 0; i < bytes.length; i++, shift += 8) {
+            tail |= (bytes[i] & 0xff) << shift;
+        }
+        hash ^= mixK(tail) ^ bytes.length;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int mixK(int k) {
+        return Integer.rotateLeft(k * 0xcc9e2d51, 15) * 0x1b873593;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        shards.forEach(SessionFactory::close);
+    }
+}
@@ -0,0 +1,167 @@
+package by.itacademy.hibernate.util;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Сессия на единицу работы: сессия привязывается к потоку через {@link SessionFactory#getCurrentSession()}
+ * (hibernate.current_session_context_class=thread), живёт ровно одну транзакцию и закрывается при commit/rollback.
+ * Вложенный вызов внутри уже открытой транзакции присоединяется к ней, поэтому DAO могут брать
+ * {@link #currentSession()}, не заботясь о границах транзакции. Пишущая единица работы внутри
+ * {@link #readOnly} не присоединяется к ней, а падает: её изменения не были бы сброшены в базу.
+ * Собирает метрики: время жизни сессий и размер кэша первого уровня
+ */
+public class UnitOfWorkManager {
+
+    private final SessionFactory sessionFactory;
+
+    private final LongAdder units = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+    private final LongAdder batchFlushes = new LongAdder();
+    private final LongAdder totalLifetimeNanos = new LongAdder();
+    private final LongAccumulator maxLifetimeNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder cacheSamples = new LongAdder();
+    private final LongAdder totalCachedEntities = new LongAdder();
+    private final LongAccumulator maxCachedEntities = new LongAccumulator(Math::max, 0);
+
+    public UnitOfWorkManager(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Возвращает сессию текущей единицы работы. Вызывать только внутри {@link #inTransaction} или {@link #readOnly}
+     */
+    public Session currentSession() {
+        return sessionFactory.getCurrentSession();
+    }
+
+    public void run(Consumer<Session> work) {
+        inTransaction(session -> {
+            work.accept(session);
+            return null;
+        });
+    }
+
+    /**
+     * Выполняет работу в транзакции: новой или уже открытой в этом потоке.
+     * Бросает IllegalStateException, если открытая транзакция только для чтения
+     */
+    public <T> T inTransaction(Function<Session, T> work) {
+        return execute(work, false);
+    }
+
+    /**
+     * Выполняет работу в транзакции только для чтения: загруженные сущности не отслеживаются на изменения,
+     * сессия не сбрасывается в базу. Внутри уже открытой транзакции просто присоединяется к ней
+     */
+    public <T> T readOnly(Function<Session, T> work) {
+        return execute(work, true);
+    }
+
+    /**
+     * Обрабатывает элементы в одной транзакции, каждые {batchSize} элементов сбрасывая изменения в базу
+     * и очищая кэш первого уровня, чтобы он не рос вместе с числом элементов.
+     * Очистка отсоединяет все сущности сессии, в том числе загруженные до вызова во внешней транзакции
+     */
+    public <T> void inBatches(Iterable<T> items, int batchSize, BiConsumer<Session, T> work) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        run(session -> {
+            int inBatch = 0;
+            for (T item : items) {
+                work.accept(session, item);
+                if (++inBatch == batchSize) {
+                    sampleCacheSize(session);
+                    session.flush();
+                    session.clear();
+                    batchFlushes.increment();
+                    inBatch = 0;
+                }
+            }
+        });
+    }
+
+    private <T> T execute(Function<Session, T> work, boolean readOnly) {
+        Session session = sessionFactory.getCurrentSession();
+        if (session.getTransaction().isActive()) {
+            if (!readOnly && session.isDefaultReadOnly()) {
+                throw new IllegalStateException("Writing unit of work cannot join a read-only one");
+            }
+            return work.apply(session);
+        }
+
+        long start = System.nanoTime();
+        Transaction transaction = session.beginTransaction();
+        try {
+            if (readOnly) {
+                session.setDefaultReadOnly(true);
+                session.setHibernateFlushMode(FlushMode.MANUAL);
+            }
+            T result = work.apply(session);
+            sampleCacheSize(session);
+            transaction.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            rollbacks.increment();
+            throw e;
+        } finally {
+            long lifetime = System.nanoTime() - start;
+            units.increment();
+            totalLifetimeNanos.add(lifetime);
+            maxLifetimeNanos.accumulate(lifetime);
+        }
+    }
+
+    private void sampleCacheSize(Session session) {
+        int entities = session.getStatistics().getEntityCount();
+        cacheSamples.increment();
+        totalCachedEntities.add(entities);
+        maxCachedEntities.accumulate(entities);
+    }
+
+    public long getUnits() {
+        return units.sum();
+    }
+
+    public long getRollbacks() {
+        return rollbacks.sum();
+    }
+
+    public long getBatchFlushes() {
+        return batchFlushes.sum();
+    }
+
+    public double getAverageLifetimeMillis() {
+        long total = units.sum();
+        return total == 0 ? 0.0 : (double) totalLifetimeNanos.sum() / total / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxLifetimeMillis() {
+        return (double) maxLifetimeNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Возвращает: средний размер кэша первого уровня перед commit и перед каждой очисткой в {@link #inBatches}
+     */
+    public double getAverageCachedEntities() {
+        long total = cacheSamples.sum();
+        return total == 0 ? 0.0 : (double) totalCachedEntities.sum() / total;
+    }
+
+    public long getMaxCachedEntities() {
+        return maxCachedEntities.get();
+    }
+}
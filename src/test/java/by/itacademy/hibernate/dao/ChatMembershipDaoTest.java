@@ -0,0 +1,167 @@
+package by.itacademy.hibernate.dao;
+
+import by.itacademy.hibernate.entity.*;
+import by.itacademy.hibernate.listener.ChatMembershipIndex;
+import by.itacademy.hibernate.util.HibernateUtil;
+import lombok.Cleanup;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
+
+@TestInstance(PER_CLASS)
+class ChatMembershipDaoTest {
+
+    private static final int USERS = 30;
+    private static final int INITIAL_MEMBERS = 25;
+    private static final int PAGE_SIZE = 10;
+
+    private final SessionFactory sessionFactory = HibernateUtil.buildSessionFactory();
+    private final List<Long> userIds = new ArrayList<>();
+    private Long chatId;
+    private Long emptyChatId;
+    private ChatMembershipDao chatMembershipDao;
+
+    @BeforeAll
+    public void initDb() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        Chat chat = Chat.builder().name("Members").build();
+        Chat emptyChat = Chat.builder().name("Empty").build();
+        session.save(chat);
+        session.save(emptyChat);
+        chatId = chat.getId();
+        emptyChatId = emptyChat.getId();
+
+        for (int i = 0; i < USERS; i++) {
+            User user = User.builder()
+                    .username("Member" + i)
+                    .personalInfo(PersonalInfo.builder()
+                            .firstname("Member" + i)
+                            .lastname("Chat")
+                            .build())
+                    .role(Role.USER)
+                    .build();
+            session.save(user);
+            userIds.add(user.getId());
+            if (i < INITIAL_MEMBERS) {
+                session.save(UserChat.builder().user(user).chat(chat).build());
+            }
+        }
+
+        session.getTransaction().commit();
+
+        chatMembershipDao = new ChatMembershipDao(ChatMembershipIndex.attach(sessionFactory));
+    }
+
+    @AfterAll
+    public void finish() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void indexIsLoadedFromExistingMemberships() {
+        assertThat(chatMembershipDao.countMembers(chatId)).isEqualTo(INITIAL_MEMBERS);
+        assertThat(chatMembershipDao.isMember(chatId, userIds.get(0))).isTrue();
+        assertThat(chatMembershipDao.isMember(chatId, userIds.get(USERS - 1))).isFalse();
+        assertThat(chatMembershipDao.countMembers(emptyChatId)).isZero();
+    }
+
+    @Test
+    void pagesThroughMembersByKeyset() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        List<Long> pagedIds = new ArrayList<>();
+        List<User> page = chatMembershipDao.findMembers(session, chatId, null, PAGE_SIZE);
+        while (!page.isEmpty()) {
+            assertThat(page).hasSizeLessThanOrEqualTo(PAGE_SIZE);
+            page.stream().map(User::getId).forEach(pagedIds::add);
+            page = chatMembershipDao.findMembers(session, chatId, page.get(page.size() - 1).getId(), PAGE_SIZE);
+        }
+
+        assertThat(pagedIds).containsExactlyElementsOf(userIds.subList(0, INITIAL_MEMBERS));
+        assertThat(chatMembershipDao.findMembers(session, emptyChatId, null, PAGE_SIZE)).isEmpty();
+
+        session.getTransaction().commit();
+    }
+
+    @Test
+    void indexFollowsCommittedWrites() {
+        Long newcomer = userIds.get(USERS - 1);
+
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        assertThat(chatMembershipDao.addMember(session, emptyChatId, newcomer)).isTrue();
+        assertThat(chatMembershipDao.addMember(session, emptyChatId, newcomer)).isFalse();
+        assertThat(chatMembershipDao.isMember(emptyChatId, newcomer)).isFalse();
+        session.getTransaction().commit();
+
+        assertThat(chatMembershipDao.isMember(emptyChatId, newcomer)).isTrue();
+        assertThat(chatMembershipDao.countMembers(emptyChatId)).isEqualTo(1);
+
+        session.beginTransaction();
+        assertThat(chatMembershipDao.removeMember(session, emptyChatId, newcomer)).isTrue();
+        session.getTransaction().commit();
+
+        assertThat(chatMembershipDao.isMember(emptyChatId, newcomer)).isFalse();
+        assertThat(chatMembershipDao.countMembers(emptyChatId)).isZero();
+    }
+
+    @Test
+    void rolledBackWritesDoNotReachIndex() {
+        Long outsider = userIds.get(USERS - 2);
+
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        chatMembershipDao.addMember(session, chatId, outsider);
+        session.flush();
+        session.getTransaction().rollback();
+
+        assertThat(chatMembershipDao.isMember(chatId, outsider)).isFalse();
+        assertThat(chatMembershipDao.countMembers(chatId)).isEqualTo(INITIAL_MEMBERS);
+    }
+
+    @Test
+    void duplicateMembershipIsRejectedBySchema() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        UserChat duplicate = UserChat.builder()
+                .user(session.load(User.class, userIds.get(0)))
+                .chat(session.load(Chat.class, chatId))
+                .build();
+
+        assertThatThrownBy(() -> {
+            session.save(duplicate);
+            session.flush();
+        }).isInstanceOf(ConstraintViolationException.class);
+        session.getTransaction().rollback();
+
+        assertThat(chatMembershipDao.countMembers(chatId)).isEqualTo(INITIAL_MEMBERS);
+    }
+
+    @Test
+    void membersAreFoundWithoutLoadingUserChats() {
+        sessionFactory.getStatistics().setStatisticsEnabled(true);
+        sessionFactory.getStatistics().clear();
+
+        chatMembershipDao.countMembers(chatId);
+        chatMembershipDao.isMember(chatId, userIds.get(0));
+
+        assertThat(sessionFactory.getStatistics().getPrepareStatementCount()).isZero();
+        assertThat(userIds.stream().filter(id -> chatMembershipDao.isMember(chatId, id)).collect(toList()))
+                .hasSize(INITIAL_MEMBERS);
+    }
+}
@@ -0,0 +1,245 @@
+package by.itacademy.hibernate.dao;
+
+import by.itacademy.hibernate.entity.*;
+import by.itacademy.hibernate.util.HibernateUtil;
+import by.itacademy.hibernate.util.ShardedSessionFactory;
+import by.itacademy.hibernate.utils.EmbeddedDatabase;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
+
+@TestInstance(PER_CLASS)
+class ShardedUserDaoTest {
+
+    private static final int SHARDS = 3;
+    private static final String CHAT = "sharded";
+    private static final List<String> USERNAMES =
+            List.of("BillGates", "SteveJobs", "SergeyBrin", "TimCook", "DianeGreene");
+
+    private ShardedSessionFactory shards;
+    private ShardedUserDao shardedUserDao;
+
+    @BeforeAll
+    public void initDb() {
+        List<SessionFactory> factories = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            factories.add(HibernateUtil.buildSessionFactory(EmbeddedDatabase.h2("shard" + i)));
+        }
+        shards = new ShardedSessionFactory(factories);
+        shardedUserDao = new ShardedUserDao(shards);
+
+        importData();
+    }
+
+    @AfterAll
+    public void finish() {
+        shards.close();
+    }
+
+    @Test
+    void usersAreSpreadAcrossShardsWithTheirPayments() {
+        List<Long> usersPerShard = shards.scatter(session ->
+                session.createQuery("SELECT COUNT(u) FROM User u", Long.class).getSingleResult());
+        assertThat(usersPerShard.stream().mapToLong(Long::longValue).sum()).isEqualTo(5);
+        assertThat(usersPerShard.stream().filter(count -> count > 0).count()).isGreaterThan(1);
+
+        List<Long> paymentsPerShard = shards.scatter(session -> session.createQuery(
+                "SELECT COUNT(p) FROM Payment p JOIN p.receiver u", Long.class).getSingleResult());
+        assertThat(paymentsPerShard.stream().mapToLong(Long::longValue).sum()).isEqualTo(14);
+    }
+
+    @Test
+    void profilesAndChatMembershipsLiveInTheirUsersShard() {
+        for (String username : USERNAMES) {
+            int home = shards.shardIndex(username);
+            List<Long> profiles = shards.scatter(session -> session.createQuery(
+                            "SELECT COUNT(p) FROM Profile p WHERE p.user.username = :username", Long.class)
+                    .setParameter("username", username)
+                    .getSingleResult());
+            List<Long> memberships = shards.scatter(session -> session.createQuery(
+                            "SELECT COUNT(uc) FROM UserChat uc WHERE uc.user.username = :username", Long.class)
+                    .setParameter("username", username)
+                    .getSingleResult());
+
+            for (int shard = 0; shard < SHARDS; shard++) {
+                long expected = shard == home ? 1 : 0;
+                assertThat(profiles.get(shard)).as("profiles of %s in shard %d", username, shard).isEqualTo(expected);
+                assertThat(memberships.get(shard)).as("chats of %s in shard %d", username, shard).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void findAll() {
+        List<User> users = shardedUserDao.findAll();
+
+        List<String> fullNames = users.stream().map(User::fullName).collect(toList());
+        assertThat(fullNames).containsExactlyInAnyOrder("Bill Gates", "Steve Jobs", "Sergey Brin", "Tim Cook", "Diane Greene");
+        assertThat(users).extracting(u -> u.getCompany().getName())
+                .containsOnly("Microsoft", "Apple", "Google");
+    }
+
+    @Test
+    void findLimitedUsersOrderedByBirthday() {
+        List<String> fullNames = shardedUserDao.findLimitedUsersOrderedByBirthday(3).stream()
+                .map(User::fullName)
+                .collect(toList());
+        assertThat(fullNames).containsExactly("Diane Greene", "Steve Jobs", "Bill Gates");
+    }
+
+    /**
+     * Шард, в котором у первых {limit} сотрудников нет даты рождения, всё равно отдаёт свою самую раннюю дату
+     */
+    @Test
+    void findLimitedUsersOrderedByBirthdayPutsUnknownBirthdaysLast() {
+        int limit = 3;
+        int home = shards.shardIndex("DianeGreene");
+        List<String> unborn = IntStream.iterate(0, i -> i + 1)
+                .mapToObj(i -> "Unborn" + i)
+                .filter(username -> shards.shardIndex(username) == home)
+                .limit(limit)
+                .collect(toList());
+        for (String username : unborn) {
+            shards.inShardOf(username, session -> session.save(User.builder()
+                    .username(username)
+                    .role(Role.USER)
+                    .build()));
+        }
+
+        try {
+            assertThat(shardedUserDao.findLimitedUsersOrderedByBirthday(limit))
+                    .extracting(User::getUsername)
+                    .containsExactly("DianeGreene", "SteveJobs", "BillGates");
+            List<String> all = shardedUserDao.findLimitedUsersOrderedByBirthday(USERNAMES.size() + limit).stream()
+                    .map(User::getUsername)
+                    .collect(toList());
+            assertThat(all.subList(USERNAMES.size(), all.size())).containsExactlyInAnyOrderElementsOf(unborn);
+        } finally {
+            shards.inShardOf(unborn.get(0), session -> session.createQuery("DELETE FROM User u WHERE u.username IN :usernames")
+                    .setParameterList("usernames", unborn)
+                    .executeUpdate());
+        }
+    }
+
+    @Test
+    void findAllByCompanyName() {
+        List<String> fullNames = shardedUserDao.findAllByCompanyName("Google").stream()
+                .map(User::fullName)
+                .collect(toList());
+        assertThat(fullNames).containsExactlyInAnyOrder("Sergey Brin", "Diane Greene");
+    }
+
+    @Test
+    void findAllPaymentsByCompanyName() {
+        List<Integer> amounts = shardedUserDao.findAllPaymentsByCompanyName("Apple").stream()
+                .map(Payment::getAmount)
+                .collect(toList());
+        assertThat(amounts).containsExactly(250, 500, 600, 300, 400);
+    }
+
+    @Test
+    void findAveragePaymentAmountByFirstAndLastNames() {
+        assertThat(shardedUserDao.findAveragePaymentAmountByFirstAndLastNames("Bill", "Gates")).isEqualTo(300.0);
+    }
+
+    @Test
+    void findCompanyNamesWithAvgUserPaymentsOrderedByCompanyName() {
+        List<Object[]> results = shardedUserDao.findCompanyNamesWithAvgUserPaymentsOrderedByCompanyName();
+
+        assertThat(results.stream().map(r -> (String) r[0]).collect(toList()))
+                .containsExactly("Apple", "Google", "Microsoft");
+        assertThat(results.stream().map(r -> (Double) r[1]).collect(toList()))
+                .containsExactly(410.0, 400.0, 300.0);
+    }
+
+    @Test
+    void findTopEarnersByCompany() {
+        List<Object[]> results = shardedUserDao.findTopEarnersByCompany(1);
+
+        assertThat(results.stream().map(r -> (String) r[1]).collect(toList()))
+                .containsExactly("SteveJobs", "SergeyBrin", "BillGates");
+        assertThat(results.stream().map(r -> (Long) r[3]).collect(toList())).containsOnly(1L);
+    }
+
+    @Test
+    void aggregates() {
+        assertThat(shardedUserDao.findUserSalaries()).hasSize(14);
+        assertThat(shardedUserDao.findHighestPaymentAmongAllUsers()).isEqualTo(600);
+        assertThat(shardedUserDao.findRolesOfAllUsers()).isEqualTo(Map.of(Role.ADMIN, 2L, Role.USER, 3L));
+    }
+
+    private void importData() {
+        for (String name : List.of("Microsoft", "Apple", "Google")) {
+            shards.inEveryShard(session -> session.save(Company.builder().name(name).build()));
+        }
+        shards.inEveryShard(session -> session.save(Chat.builder().name(CHAT).build()));
+
+        saveUser("Bill", "Gates", LocalDate.of(1955, Month.OCTOBER, 28), "Microsoft", Role.ADMIN, 100, 300, 500);
+        saveUser("Steve", "Jobs", LocalDate.of(1955, Month.FEBRUARY, 24), "Apple", Role.ADMIN, 250, 600, 500);
+        saveUser("Sergey", "Brin", LocalDate.of(1973, Month.AUGUST, 21), "Google", Role.USER, 500, 500, 500);
+        saveUser("Tim", "Cook", LocalDate.of(1960, Month.NOVEMBER, 1), "Apple", Role.USER, 400, 300);
+        saveUser("Diane", "Greene", LocalDate.of(1955, Month.JANUARY, 1), "Google", Role.USER, 300, 300, 300);
+    }
+
+    private void saveUser(String firstName, String lastName, LocalDate birthday, String companyName, Role role,
+                          Integer... payments) {
+        String username = firstName + lastName;
+        shards.inShardOf(username, session -> {
+            User user = User.builder()
+                    .username(username)
+                    .personalInfo(PersonalInfo.builder()
+                            .firstname(firstName)
+                            .lastname(lastName)
+                            .birthDate(new Birthday(birthday))
+                            .build())
+                    .role(role)
+                    .company(findCompany(session, companyName))
+                    .build();
+            session.save(user);
+
+            session.save(Profile.builder()
+                    .user(user)
+                    .street(firstName + " street")
+                    .language(Language.JAVA)
+                    .build());
+            session.save(UserChat.builder()
+                    .user(user)
+                    .chat(findChat(session))
+                    .build());
+
+            for (Integer amount : payments) {
+                session.save(Payment.builder()
+                        .receiver(user)
+                        .amount(amount)
+                        .build());
+            }
+            return user;
+        });
+    }
+
+    private Chat findChat(Session session) {
+        return session.createQuery("FROM Chat c WHERE c.name = :name", Chat.class)
+                .setParameter("name", CHAT)
+                .getSingleResult();
+    }
+
+    private Company findCompany(Session session, String name) {
+        return session.createQuery("FROM Company c WHERE c.name = :name", Company.class)
+                .setParameter("name", name)
+                .getSingleResult();
+    }
+}
@@ -0,0 +1,158 @@
+package by.itacademy.hibernate.dao;
+
+import by.itacademy.hibernate.util.HibernateUtil;
+import by.itacademy.hibernate.utils.EmbeddedDatabase;
+import by.itacademy.hibernate.utils.QueryPlanVerifier;
+import by.itacademy.hibernate.utils.SyntheticDataImporter;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Spec;
+import lombok.Cleanup;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
+
+/**
+ * Проверяет, что запросы UserDao используют индексы, а не просматривают большие таблицы целиком.
+ * Порог размера таблицы задаётся свойством plan.fullScanThreshold
+ */
+@TestInstance(PER_CLASS)
+class UserDaoQueryPlanTest {
+
+    private static final String USERS = "users";
+    private static final String PAYMENT = "payment";
+    private static final String PROFILE = "profile";
+
+    private final SessionFactory sessionFactory = HibernateUtil.buildSessionFactory(EmbeddedDatabase.h2("plans"));
+    private final QueryPlanVerifier verifier = new QueryPlanVerifier(sessionFactory,
+            Long.getLong("plan.fullScanThreshold", 1_000));
+    private final UserDao userDao = UserDao.getInstance();
+
+    @BeforeAll
+    public void initDb() {
+        SyntheticDataImporter.importData(sessionFactory, Spec.builder()
+                .companies(20)
+                .users(2_000)
+                .paymentsPerUser(5)
+                .build());
+
+        @Cleanup Session session = sessionFactory.openSession();
+        session.doWork(connection -> connection.createStatement().execute("ANALYZE"));
+    }
+
+    @AfterAll
+    public void finish() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void findAllByFirstName() {
+        assertIndexed(session -> userDao.findAllByFirstName(session, "Bill"));
+    }
+
+    @Test
+    void findLimitedUsersOrderedByBirthday() {
+        assertIndexed(session -> userDao.findLimitedUsersOrderedByBirthday(session, 10));
+    }
+
+    @Test
+    void findAllByCompanyName() {
+        assertIndexed(session -> userDao.findAllByCompanyName(session, "Company5"));
+    }
+
+    @Test
+    void findAllPaymentsByCompanyName() {
+        assertIndexed(session -> userDao.findAllPaymentsByCompanyName(session, "Company5"));
+    }
+
+    @Test
+    void findAveragePaymentAmountByFirstAndLastNames() {
+        assertIndexed(session -> userDao.findAveragePaymentAmountByFirstAndLastNames(session, "Bill", "Gates"));
+    }
+
+    @Test
+    void findUserRankWithinCompany() {
+        assertIndexed(session -> userDao.findUserRankWithinCompany(session, "user42"));
+    }
+
+    @Test
+    void findUsersAgedBetween() {
+        assertIndexed(session -> userDao.findUsersAgedBetween(session, 30, 35, LocalDate.of(2023, 8, 21), 10));
+    }
+
+    /**
+     * Запросы ниже по смыслу читают таблицы целиком; проверяется, что остальные таблицы
+     * (например, профили, подгружаемые для каждого сотрудника) читаются по индексу
+     */
+    @Test
+    void findAll() {
+        assertIndexed(userDao::findAll, USERS);
+    }
+
+    @Test
+    void findCompanyNamesWithAvgUserPaymentsOrderedByCompanyName() {
+        assertIndexed(userDao::findCompanyNamesWithAvgUserPaymentsOrderedByCompanyName, USERS, PAYMENT);
+    }
+
+    @Test
+    void isItPossible() {
+        assertIndexed(userDao::isItPossible, PAYMENT);
+    }
+
+    @Test
+    void findUserSalaries() {
+        assertIndexed(userDao::findUserSalaries, PAYMENT);
+    }
+
+    @Test
+    void findHighestPaymentAmongAllUsers() {
+        assertIndexed(userDao::findHighestPaymentAmongAllUsers, PAYMENT);
+    }
+
+    @Test
+    void findRolesOfAllUsers() {
+        assertIndexed(userDao::findRolesOfAllUsers, USERS);
+    }
+
+    /**
+     * Возраст и день рождения вычисляются из birth_date выражением, которое B-tree индекс по дате не покрывает
+     */
+    @Test
+    void ageAnalytics() {
+        LocalDate today = LocalDate.of(2023, 8, 21);
+        assertIndexed(session -> userDao.findAgeHistogramByCompany(session, 10, today), USERS);
+        assertIndexed(session -> userDao.findAgeHistogramByRole(session, 10, today), USERS);
+        assertIndexed(session -> userDao.findUpcomingBirthdays(session, today, 30, 10), USERS);
+    }
+
+    @Test
+    void findTopEarnersByCompany() {
+        assertIndexed(session -> userDao.findTopEarnersByCompany(session, 3), USERS, PAYMENT);
+    }
+
+    @Test
+    void findTopPaymentsByUser() {
+        assertIndexed(session -> userDao.findTopPaymentsByUser(session, 3), USERS, PAYMENT);
+    }
+
+    /**
+     * Поиск по вхождению подстроки (LIKE '%...%') не может использовать B-tree индекс,
+     * поэтому планировщик может начать соединение с полного просмотра любой из таблиц
+     */
+    @Test
+    void substringSearches() {
+        assertIndexed(session -> userDao.findLanguageByFirstAndLastName(session, "Bill", "Gates"), USERS, PROFILE);
+        assertIndexed(session -> userDao.findAgeByLastName(session, "Gates"), USERS);
+    }
+
+    private void assertIndexed(Consumer<Session> query, String... allowedFullScans) {
+        assertThat(verifier.verify(query, allowedFullScans)).isEmpty();
+    }
+}
@@ -13,11 +13,16 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static by.itacademy.hibernate.entity.QUser.user;
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
 
@@ -141,17 +146,56 @@ class UserDaoTest {
         session.beginTransaction();
 
         List<Object[]> results = userDao.isItPossible(session);
-        assertThat(results).hasSize(5);
+        assertThat(results).hasSize(2);
 
         List<String> names = results.stream().map(r -> ((User) r[0]).fullName()).collect(toList());
-        assertThat(names).contains("Sergey Brin", "Steve Jobs");
+        assertThat(names).containsExactly("Sergey Brin", "Steve Jobs");
 
         List<Double> averagePayments = results.stream().map(r -> (Double) r[1]).collect(toList());
-        assertThat(averagePayments).contains(500.0, 450.0);
+        assertThat(averagePayments).containsExactly(500.0, 450.0);
 
         session.getTransaction().commit();
     }
 
+    @Test
+    void isItPossibleInParallel() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Object[]> results = userDao.isItPossible(sessionFactory, pool);
+
+            List<String> names = results.stream().map(r -> ((User) r[0]).fullName()).collect(toList());
+            assertThat(names).containsExactly("Sergey Brin", "Steve Jobs");
+
+            List<Double> averagePayments = results.stream().map(r -> (Double) r[1]).collect(toList());
+            assertThat(averagePayments).containsExactly(500.0, 450.0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Сотрудники без имени (в том числе с пустым personalInfo) идут после остальных, в порядке id
+     */
+    @Test
+    void isItPossibleWithoutFirstName() {
+        List<Long> ids = saveEarnersWithoutFirstName();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            @Cleanup Session session = sessionFactory.openSession();
+            session.beginTransaction();
+            List<Object[]> results = userDao.isItPossible(session);
+            session.getTransaction().commit();
+
+            assertThat(results).extracting(r -> ((User) r[0]).getUsername())
+                    .containsExactly("SergeyBrin", "SteveJobs", "NoFirstName", "NoPersonalInfo");
+            assertThat(userDao.isItPossible(sessionFactory, pool)).extracting(r -> ((User) r[0]).getId())
+                    .containsExactlyElementsOf(results.stream().map(r -> ((User) r[0]).getId()).collect(toList()));
+        } finally {
+            pool.shutdown();
+            deleteUsers(ids);
+        }
+    }
+
     ////
 
     @Test
@@ -182,6 +226,122 @@ class UserDaoTest {
         session.getTransaction().commit();
     }
 
+    @Test
+    void findTopEarnersByCompany() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        List<Object[]> results = userDao.findTopEarnersByCompany(session, 1);
+        assertThat(results).hasSize(3);
+
+        List<String> usernames = results.stream().map(r -> (String) r[1]).collect(toList());
+        assertThat(usernames).containsExactly("SteveJobs", "SergeyBrin", "BillGates");
+
+        List<Long> totals = results.stream().map(r -> (Long) r[2]).collect(toList());
+        assertThat(totals).containsExactly(1350L, 1500L, 900L);
+
+        session.getTransaction().commit();
+    }
+
+    @Test
+    void findTopPaymentsByUser() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        List<Object[]> results = userDao.findTopPaymentsByUser(session, 2);
+        assertThat(results).hasSize(10);
+
+        List<Integer> steveJobsPayments = results.stream()
+                .filter(r -> "SteveJobs".equals(r[0]))
+                .map(r -> (Integer) r[1])
+                .collect(toList());
+        assertThat(steveJobsPayments).containsExactly(600, 500);
+
+        session.getTransaction().commit();
+    }
+
+    @Test
+    void findUserRankWithinCompany() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        Object[] timCook = userDao.findUserRankWithinCompany(session, "TimCook").orElseThrow();
+        assertThat(timCook[0]).isEqualTo(2L);
+        assertThat(timCook[1]).isEqualTo(0.0);
+
+        Object[] steveJobs = userDao.findUserRankWithinCompany(session, "SteveJobs").orElseThrow();
+        assertThat(steveJobs[0]).isEqualTo(1L);
+        assertThat(steveJobs[1]).isEqualTo(1.0);
+
+        assertThat(userDao.findUserRankWithinCompany(session, "Unknown")).isEmpty();
+
+        session.getTransaction().commit();
+    }
+
+    @Test
+    void findTopEarnersByCompanyStreaming() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        List<Object[]> results = userDao.findTopEarnersByCompanyStreaming(session, 1);
+        assertThat(results).extracting(r -> r[0] + " " + r[1] + " " + r[2] + " " + r[3])
+                .containsExactly("Apple SteveJobs 1350 1", "Google SergeyBrin 1500 1", "Microsoft BillGates 900 1");
+        assertThat(userDao.findTopEarnersByCompanyStreaming(session, 10)).extracting(Arrays::toString)
+                .containsExactlyElementsOf(userDao.findTopEarnersByCompanyWindowed(session, 10).stream()
+                        .map(Arrays::toString)
+                        .collect(toList()));
+
+        session.getTransaction().commit();
+    }
+
+    @Test
+    void findTopPaymentsByUserStreaming() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        List<Object[]> results = userDao.findTopPaymentsByUserStreaming(session, 2);
+        assertThat(results).filteredOn(r -> "SteveJobs".equals(r[0]))
+                .extracting(r -> r[1] + " " + r[2])
+                .containsExactly("600 1", "500 2");
+        assertThat(userDao.findTopPaymentsByUserStreaming(session, 100)).extracting(Arrays::toString)
+                .containsExactlyElementsOf(userDao.findTopPaymentsByUserWindowed(session, 100).stream()
+                        .map(Arrays::toString)
+                        .collect(toList()));
+
+        session.getTransaction().commit();
+    }
+
+    @Test
+    void findUserRankWithinCompanyInMemory() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        for (String username : List.of("TimCook", "SteveJobs", "BillGates", "SergeyBrin", "DianeGreene")) {
+            assertThat(userDao.findUserRankWithinCompanyInMemory(session, username).orElseThrow())
+                    .containsExactly(userDao.findUserRankWithinCompanyWindowed(session, username).orElseThrow());
+        }
+        assertThat(userDao.findUserRankWithinCompanyInMemory(session, "Unknown")).isEmpty();
+
+        session.getTransaction().commit();
+    }
+
+    @Test
+    void topKQueriesRejectNonPositiveK() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        assertThatThrownBy(() -> userDao.findTopEarnersByCompany(session, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> userDao.findTopPaymentsByUser(session, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> userDao.findTopEarnersByCompanyStreaming(session, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> userDao.findTopPaymentsByUserWindowed(session, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        session.getTransaction().commit();
+    }
+
     @Test
     void findRolesOfAllUsers() {
         @Cleanup Session session = sessionFactory.openSession();
@@ -222,10 +382,105 @@ class UserDaoTest {
         session.beginTransaction();
 
         String lastName = "Brin";
-        long age = userDao.findAgeByLastName(session, lastName);
+        assertEquals(49, userDao.findAgeByLastName(session, lastName, LocalDate.of(2023, Month.AUGUST, 20)));
+        assertEquals(50, userDao.findAgeByLastName(session, lastName, LocalDate.of(2023, Month.AUGUST, 21)));
+        assertEquals(-1, userDao.findAgeByLastName(session, "Nobody", LocalDate.of(2023, Month.AUGUST, 21)));
+        assertEquals(-1, userDao.findAgeByLastName(session, "B%n", LocalDate.of(2023, Month.AUGUST, 21)));
+        assertEquals(-1, userDao.findAgeByLastName(session, "Br_n", LocalDate.of(2023, Month.AUGUST, 21)));
+        assertEquals(-1, userDao.findAgeByLastName(session, "%", LocalDate.of(2023, Month.AUGUST, 21)));
+        assertEquals(-1, userDao.findAgeByLastName(session, "Brin!", LocalDate.of(2023, Month.AUGUST, 21)));
+
+        session.getTransaction().commit();
+    }
+
+    @Test
+    void findUsersAgedBetween() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        List<User> results = userDao.findUsersAgedBetween(session, 60, 68, LocalDate.of(2024, Month.JANUARY, 1), 10);
+        assertThat(results.stream().map(User::fullName).collect(toList()))
+                .containsExactly("Tim Cook", "Bill Gates", "Steve Jobs");
+
+        List<User> limited = userDao.findUsersAgedBetween(session, 60, 68, LocalDate.of(2024, Month.JANUARY, 1), 2);
+        assertThat(limited.stream().map(User::fullName).collect(toList())).containsExactly("Tim Cook", "Bill Gates");
+
+        session.getTransaction().commit();
+    }
 
-        assertEquals(50, age);
+    @Test
+    void findAgeHistograms() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        List<Object[]> byCompany = userDao.findAgeHistogramByCompany(session, 10, LocalDate.of(2024, Month.JANUARY, 1));
+        assertThat(byCompany.stream().map(r -> r[0] + " " + r[1] + " " + r[2]).collect(toList()))
+                .containsExactly("Apple 60 2", "Google 50 1", "Google 60 1", "Microsoft 60 1");
+
+        List<Object[]> byRole = userDao.findAgeHistogramByRole(session, 10, LocalDate.of(2024, Month.JANUARY, 1));
+        assertThat(byRole.stream().map(r -> r[0] + " " + r[1] + " " + r[2]).collect(toList()))
+                .containsExactly("ADMIN 60 2", "USER 50 1", "USER 60 2");
+
+        session.getTransaction().commit();
+    }
+
+    @Test
+    void findUpcomingBirthdays() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        List<User> autumn = userDao.findUpcomingBirthdays(session, LocalDate.of(2023, Month.OCTOBER, 25), 10, 10);
+        assertThat(autumn.stream().map(User::fullName).collect(toList())).containsExactly("Bill Gates", "Tim Cook");
+
+        List<User> newYear = userDao.findUpcomingBirthdays(session, LocalDate.of(2023, Month.DECEMBER, 20), 70, 10);
+        assertThat(newYear.stream().map(User::fullName).collect(toList())).containsExactly("Diane Greene", "Steve Jobs");
 
+        List<User> wholeYear = userDao.findUpcomingBirthdays(session, LocalDate.of(2023, Month.NOVEMBER, 1), 366, 10);
+        assertThat(wholeYear.stream().map(User::fullName).collect(toList()))
+                .containsExactly("Tim Cook", "Diane Greene", "Steve Jobs", "Sergey Brin", "Bill Gates");
+
+        session.getTransaction().commit();
+    }
+
+    /**
+     * Средние 460 выше общего среднего и с этими выплатами, остальные результаты isItPossible не меняются
+     */
+    private List<Long> saveEarnersWithoutFirstName() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        User noFirstName = User.builder()
+                .username("NoFirstName")
+                .personalInfo(PersonalInfo.builder()
+                        .lastname("Anonymous")
+                        .build())
+                .role(Role.USER)
+                .build();
+        User noPersonalInfo = User.builder()
+                .username("NoPersonalInfo")
+                .role(Role.USER)
+                .build();
+        for (User user : List.of(noFirstName, noPersonalInfo)) {
+            session.save(user);
+            session.save(Payment.builder()
+                    .receiver(user)
+                    .amount(460)
+                    .build());
+        }
+
+        session.getTransaction().commit();
+        return List.of(noFirstName.getId(), noPersonalInfo.getId());
+    }
+
+    private void deleteUsers(List<Long> ids) {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.createQuery("DELETE FROM Payment p WHERE p.receiver.id IN :ids")
+                .setParameterList("ids", ids)
+                .executeUpdate();
+        session.createQuery("DELETE FROM User u WHERE u.id IN :ids")
+                .setParameterList("ids", ids)
+                .executeUpdate();
         session.getTransaction().commit();
     }
-}
\ No newline at end of file
+}
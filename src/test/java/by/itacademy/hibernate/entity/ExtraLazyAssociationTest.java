@@ -0,0 +1,177 @@
+package by.itacademy.hibernate.entity;
+
+import by.itacademy.hibernate.util.HibernateUtil;
+import lombok.Cleanup;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
+
+@TestInstance(PER_CLASS)
+class ExtraLazyAssociationTest {
+
+    private static final int SMALL = 10;
+    private static final int LARGE = 1_000;
+
+    private final SessionFactory sessionFactory = HibernateUtil.buildSessionFactory();
+    private final Statistics statistics = sessionFactory.getStatistics();
+
+    @BeforeAll
+    public void initDb() {
+        statistics.setStatisticsEnabled(true);
+
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        seedCompanyWithChat(session, "Small", SMALL);
+        seedCompanyWithChat(session, "Large", LARGE);
+
+        session.getTransaction().commit();
+    }
+
+    @AfterAll
+    public void finish() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void addUserCostDoesNotDependOnCompanySize() {
+        long[] smallCost = measureAddUser("Small");
+        long[] largeCost = measureAddUser("Large");
+
+        assertThat(largeCost).containsExactly(smallCost);
+    }
+
+    @Test
+    void addChatMemberCostDoesNotDependOnChatSize() {
+        long[] smallCost = measureAddChatMember("Small");
+        long[] largeCost = measureAddChatMember("Large");
+
+        assertThat(largeCost).containsExactly(smallCost);
+    }
+
+    @Test
+    void sizeAndContainsDoNotInitializeCollections() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        Company company = findCompany(session, "Large");
+        Chat chat = findChat(session, "Large");
+        User member = session.createQuery("FROM User u WHERE u.username = :username", User.class)
+                .setParameter("username", "Large0")
+                .getSingleResult();
+
+        assertThat(company.getUsers()).hasSize(LARGE);
+        assertThat(company.getUsers().contains(member)).isTrue();
+        assertThat(chat.getUserChats()).hasSize(LARGE);
+        assertThat(member.getUserChats()).hasSize(1);
+
+        assertThat(Hibernate.isInitialized(company.getUsers())).isFalse();
+        assertThat(Hibernate.isInitialized(chat.getUserChats())).isFalse();
+        assertThat(Hibernate.isInitialized(member.getUserChats())).isFalse();
+
+        session.getTransaction().rollback();
+    }
+
+    /**
+     * Возвращает: количество SQL-запросов и размер контекста персистентности после добавления сотрудника
+     */
+    private long[] measureAddUser(String companyName) {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        Company company = findCompany(session, companyName);
+        statistics.clear();
+
+        User user = buildUser(companyName + "-new");
+        company.addUser(user);
+        session.flush();
+
+        assertThat(Hibernate.isInitialized(company.getUsers())).isFalse();
+        long[] cost = {statistics.getPrepareStatementCount(), session.getStatistics().getEntityCount()};
+
+        session.getTransaction().rollback();
+        return cost;
+    }
+
+    private long[] measureAddChatMember(String chatName) {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        Chat chat = findChat(session, chatName);
+        User user = buildUser(chatName + "-member");
+        session.save(user);
+        statistics.clear();
+
+        UserChat userChat = new UserChat();
+        userChat.setUser(user);
+        userChat.setChat(chat);
+        session.save(userChat);
+        session.flush();
+
+        assertThat(Hibernate.isInitialized(chat.getUserChats())).isFalse();
+        long[] cost = {statistics.getPrepareStatementCount(), session.getStatistics().getEntityCount()};
+
+        session.getTransaction().rollback();
+        return cost;
+    }
+
+    private void seedCompanyWithChat(Session session, String name, int members) {
+        Company company = Company.builder()
+                .name(name)
+                .build();
+        Chat chat = Chat.builder()
+                .name(name)
+                .build();
+        session.save(company);
+        session.save(chat);
+
+        for (int i = 0; i < members; i++) {
+            User user = buildUser(name + i);
+            company.addUser(user);
+            session.save(user);
+
+            UserChat userChat = new UserChat();
+            userChat.setUser(user);
+            userChat.setChat(chat);
+            session.save(userChat);
+
+            if (i % 100 == 0) {
+                session.flush();
+                session.clear();
+                company = session.get(Company.class, company.getId());
+                chat = session.get(Chat.class, chat.getId());
+            }
+        }
+    }
+
+    private User buildUser(String username) {
+        return User.builder()
+                .username(username)
+                .personalInfo(PersonalInfo.builder()
+                        .firstname(username)
+                        .lastname(username)
+                        .build())
+                .role(Role.USER)
+                .build();
+    }
+
+    private Company findCompany(Session session, String name) {
+        return session.createQuery("FROM Company c WHERE c.name = :name", Company.class)
+                .setParameter("name", name)
+                .getSingleResult();
+    }
+
+    private Chat findChat(Session session, String name) {
+        return session.createQuery("FROM Chat c WHERE c.name = :name", Chat.class)
+                .setParameter("name", name)
+                .getSingleResult();
+    }
+}
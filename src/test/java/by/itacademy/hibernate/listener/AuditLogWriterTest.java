@@ -0,0 +1,219 @@
+package by.itacademy.hibernate.listener;
+
+import by.itacademy.hibernate.entity.*;
+import by.itacademy.hibernate.util.AuditContext;
+import by.itacademy.hibernate.util.HibernateUtil;
+import by.itacademy.hibernate.utils.EmbeddedDatabase;
+import by.itacademy.hibernate.utils.SyntheticDataImporter;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Spec;
+import lombok.Cleanup;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
+
+@TestInstance(PER_CLASS)
+class AuditLogWriterTest {
+
+    private static final int INSERTS = 2_000;
+    private static final int INSERTS_PER_TRANSACTION = 20;
+
+    private final SessionFactory sessionFactory = HibernateUtil.buildSessionFactory();
+    private User user;
+    private int chats;
+
+    @BeforeAll
+    public void initDb() {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        user = user("Auditor");
+        session.save(user);
+
+        session.getTransaction().commit();
+    }
+
+    @AfterAll
+    public void finish() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void stampsAuditableEntitiesOnInsert() {
+        Long id;
+        try (AuditContext.Scope ignored = AuditContext.open("alice")) {
+            id = insertUserChats(1);
+        }
+
+        @Cleanup Session session = sessionFactory.openSession();
+        UserChat userChat = session.get(UserChat.class, id);
+        assertThat(userChat.getCreatedBy()).isEqualTo("alice");
+        assertThat(userChat.getCreatedAt()).isNotNull();
+    }
+
+    @Test
+    void usesSystemPrincipalOutsideOfContext() {
+        Long id = insertUserChats(1);
+
+        @Cleanup Session session = sessionFactory.openSession();
+        assertThat(session.get(UserChat.class, id).getCreatedBy()).isEqualTo(AuditContext.SYSTEM);
+    }
+
+    @Test
+    void syntheticImportStampsStatelessInserts() {
+        try (AuditContext.Scope ignored = AuditContext.open("importer")) {
+            SyntheticDataImporter.importData(sessionFactory, Spec.builder()
+                    .companies(1)
+                    .users(10)
+                    .paymentsPerUser(0)
+                    .chats(2)
+                    .build());
+        }
+
+        @Cleanup Session session = sessionFactory.openSession();
+        List<Object[]> stamps = session.createQuery(
+                        "SELECT uc.createdAt, uc.createdBy FROM UserChat uc WHERE uc.chat.name LIKE 'Chat%'", Object[].class)
+                .getResultList();
+        assertThat(stamps).hasSize(20);
+        assertThat(stamps).extracting(stamp -> stamp[0]).doesNotContainNull();
+        assertThat(stamps).extracting(stamp -> stamp[1]).containsOnly("importer");
+    }
+
+    @Test
+    void writesAuditLogInBatchesAndComparesThroughput() throws Exception {
+        measureInserts(); // прогрев
+        long withoutLog = measureInserts();
+
+        long withLog;
+        AuditLogWriter writer = AuditLogWriter.attach(sessionFactory, 100_000, 500);
+        try (AuditContext.Scope ignored = AuditContext.open("bob")) {
+            withLog = measureInserts();
+            assertThat(writer.awaitWritten(30, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            writer.close();
+        }
+
+        assertThat(writer.getDropped()).isZero();
+        assertThat(writer.getFailed()).isZero();
+        assertThat(writer.getWritten()).isEqualTo(INSERTS);
+        assertThat(writer.getBatches()).isLessThan(INSERTS);
+
+        @Cleanup Session session = sessionFactory.openSession();
+        Long logged = session.createQuery(
+                        "SELECT COUNT(a) FROM AuditLog a WHERE a.principal = :principal AND a.entityName = :entityName",
+                        Long.class)
+                .setParameter("principal", "bob")
+                .setParameter("entityName", UserChat.class.getName())
+                .getSingleResult();
+        assertThat(logged).isEqualTo(INSERTS);
+
+        System.out.printf("UserChat inserts: audit log off %.0f/s, audit log on %.0f/s (%d batches)%n",
+                INSERTS * 1e9 / withoutLog, INSERTS * 1e9 / withLog, writer.getBatches());
+    }
+
+    /**
+     * Отдельная база: к фабрике можно подключить только один AuditLogWriter
+     */
+    @Test
+    void countsRecordsOfFailedBatches() throws Exception {
+        try (SessionFactory isolated = HibernateUtil.buildSessionFactory(EmbeddedDatabase.h2("audit-failures"))) {
+            User member;
+            try (Session session = isolated.openSession()) {
+                session.beginTransaction();
+                member = user("FailedAuditor");
+                session.save(member);
+                session.createNativeQuery("ALTER TABLE audit_log RENAME TO audit_log_offline").executeUpdate();
+                session.getTransaction().commit();
+            }
+
+            AuditLogWriter writer = AuditLogWriter.attach(isolated, 1_000, 10);
+            try {
+                insertUserChats(isolated, member, INSERTS_PER_TRANSACTION);
+
+                assertThat(writer.awaitWritten(5, TimeUnit.SECONDS)).isTrue();
+                assertThat(writer.getFailed()).isEqualTo(INSERTS_PER_TRANSACTION);
+                assertThat(writer.getWritten()).isZero();
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Возвращает: время вставки INSERTS записей в наносекундах; чаты создаются до замера
+     */
+    private long measureInserts() {
+        List<Long> chatIds = createChats(sessionFactory, INSERTS);
+        long start = System.nanoTime();
+        for (int i = 0; i < INSERTS; i += INSERTS_PER_TRANSACTION) {
+            insertUserChats(sessionFactory, user, chatIds.subList(i, i + INSERTS_PER_TRANSACTION));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private Long insertUserChats(int count) {
+        return insertUserChats(sessionFactory, user, count);
+    }
+
+    private Long insertUserChats(SessionFactory sessionFactory, User user, int count) {
+        return insertUserChats(sessionFactory, user, createChats(sessionFactory, count));
+    }
+
+    /**
+     * Пара (чат, сотрудник) уникальна, поэтому каждая запись UserChat получает свой чат
+     */
+    private List<Long> createChats(SessionFactory sessionFactory, int count) {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        List<Long> chatIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            chatIds.add((Long) session.save(Chat.builder()
+                    .name("Audited" + chats++)
+                    .build()));
+        }
+
+        session.getTransaction().commit();
+        return chatIds;
+    }
+
+    /**
+     * Возвращает: id последней вставленной записи UserChat
+     */
+    private Long insertUserChats(SessionFactory sessionFactory, User user, List<Long> chatIds) {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        UserChat userChat = null;
+        for (Long chatId : chatIds) {
+            userChat = UserChat.builder()
+                    .user(session.load(User.class, user.getId()))
+                    .chat(session.load(Chat.class, chatId))
+                    .build();
+            session.save(userChat);
+        }
+
+        session.getTransaction().commit();
+        return userChat.getId();
+    }
+
+    private User user(String username) {
+        return User.builder()
+                .username(username)
+                .personalInfo(PersonalInfo.builder()
+                        .firstname("Audit")
+                        .lastname("Or")
+                        .build())
+                .role(Role.ADMIN)
+                .build();
+    }
+}
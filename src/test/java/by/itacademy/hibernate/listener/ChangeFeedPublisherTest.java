@@ -0,0 +1,204 @@
+package by.itacademy.hibernate.listener;
+
+import by.itacademy.hibernate.entity.*;
+import by.itacademy.hibernate.util.ChangeEvent;
+import by.itacademy.hibernate.util.ChangeEvent.Operation;
+import by.itacademy.hibernate.util.ChangeLog;
+import by.itacademy.hibernate.util.ChangeLogReader;
+import by.itacademy.hibernate.util.HibernateUtil;
+import by.itacademy.hibernate.utils.EmbeddedDatabase;
+import lombok.Cleanup;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
+
+@TestInstance(PER_CLASS)
+class ChangeFeedPublisherTest {
+
+    private static final int BATCH = 100;
+    private static final int SMALL_SEGMENT_SIZE = 256;
+
+    private final SessionFactory sessionFactory = HibernateUtil.buildSessionFactory();
+    private Path directory;
+    private ChangeLog changeLog;
+    private ChangeFeedPublisher publisher;
+
+    @BeforeAll
+    public void initFeed() throws IOException {
+        directory = Files.createTempDirectory("change-feed");
+        changeLog = new ChangeLog(directory);
+        publisher = ChangeFeedPublisher.attach(sessionFactory, changeLog);
+    }
+
+    @AfterAll
+    public void finish() throws IOException {
+        sessionFactory.close();
+        changeLog.close();
+        delete(directory);
+    }
+
+    @Test
+    void publishesCommittedChangesOfAllFeedEntities() {
+        long start = changeLog.getNextOffset();
+
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        Company company = Company.builder().name("Feed").build();
+        User user = user("FeedUser");
+        user.setCompany(company);
+        Chat chat = Chat.builder().name("FeedChat").build();
+        session.save(company);
+        session.save(user);
+        session.save(chat);
+        Payment payment = Payment.builder().receiver(user).amount(100).build();
+        session.save(payment);
+        UserChat userChat = UserChat.builder().user(user).chat(chat).build();
+        session.save(userChat);
+        session.getTransaction().commit();
+
+        session.beginTransaction();
+        payment.setAmount(150);
+        session.getTransaction().commit();
+
+        session.beginTransaction();
+        session.delete(userChat);
+        session.getTransaction().commit();
+
+        try (ChangeLogReader reader = new ChangeLogReader(directory, start)) {
+            List<ChangeEvent> events = reader.poll(100);
+
+            assertThat(events).extracting(event -> event.getOperation() + " " + event.getEntityName())
+                    .containsExactly(
+                            "INSERT " + Company.class.getName(),
+                            "INSERT " + User.class.getName(),
+                            "INSERT " + Payment.class.getName(),
+                            "INSERT " + UserChat.class.getName(),
+                            "UPDATE " + Payment.class.getName(),
+                            "DELETE " + UserChat.class.getName());
+            assertThat(events).extracting(ChangeEvent::getOffset).isSorted().doesNotHaveDuplicates();
+            assertThat(events).extracting(ChangeEvent::getVersion).containsExactly(0L, 0L, 0L, 0L, 1L, 0L);
+
+            ChangeEvent insertedPayment = events.get(2);
+            assertThat(insertedPayment.getEntityId()).isEqualTo(String.valueOf(payment.getId()));
+            assertThat(insertedPayment.getState())
+                    .containsEntry("amount", "100")
+                    .containsEntry("receiver", String.valueOf(user.getId()));
+
+            ChangeEvent updatedPayment = events.get(4);
+            assertThat(updatedPayment.getState()).containsEntry("amount", "150").doesNotContainKey("receiver");
+
+            assertThat(events.get(1).getState()).containsEntry("company", String.valueOf(company.getId()))
+                    .doesNotContainKeys("payments", "userChats", "profile");
+        }
+    }
+
+    @Test
+    void rolledBackChangesAreNotPublished() {
+        long start = changeLog.getNextOffset();
+
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.save(user("RolledBack"));
+        session.flush();
+        session.getTransaction().rollback();
+
+        assertThat(changeLog.getNextOffset()).isEqualTo(start);
+    }
+
+    @Test
+    void consumerResumesFromSavedOffset() {
+        long start = changeLog.getNextOffset();
+        insertUsers("First", BATCH);
+
+        long savedOffset;
+        try (ChangeLogReader reader = new ChangeLogReader(directory, start)) {
+            List<ChangeEvent> firstBatch = reader.poll(Integer.MAX_VALUE);
+            assertThat(firstBatch).hasSize(BATCH);
+            savedOffset = reader.getNextOffset();
+        }
+
+        insertUsers("Second", BATCH);
+
+        try (ChangeLogReader reader = new ChangeLogReader(directory, savedOffset)) {
+            List<ChangeEvent> secondBatch = reader.poll(Integer.MAX_VALUE);
+            assertThat(secondBatch).hasSize(BATCH);
+            assertThat(secondBatch.get(0).getOffset()).isEqualTo(savedOffset);
+            assertThat(secondBatch).extracting(event -> event.getState().get("username"))
+                    .allMatch(username -> username.startsWith("Second"));
+        }
+        assertThat(publisher.getFailures()).isZero();
+    }
+
+    @Test
+    void feedStopsAfterFailedAppend() throws IOException {
+        Path stoppedDirectory = Files.createTempDirectory("change-feed-stopped");
+        try (SessionFactory stoppedFactory = HibernateUtil.buildSessionFactory(EmbeddedDatabase.h2("change-feed"));
+             ChangeLog smallLog = new ChangeLog(stoppedDirectory, SMALL_SEGMENT_SIZE)) {
+            ChangeFeedPublisher stoppedPublisher = ChangeFeedPublisher.attach(stoppedFactory, smallLog);
+
+            saveCompany(stoppedFactory, "Before");
+            saveCompany(stoppedFactory, "TooLarge".repeat(30));
+            saveCompany(stoppedFactory, "After");
+
+            assertThat(stoppedPublisher.isStopped()).isTrue();
+            assertThat(stoppedPublisher.getFailure()).isInstanceOf(IllegalArgumentException.class);
+            assertThat(stoppedPublisher.getPublished()).isEqualTo(1);
+            assertThat(stoppedPublisher.getFailures()).isEqualTo(2);
+            try (ChangeLogReader reader = new ChangeLogReader(stoppedDirectory, 0)) {
+                assertThat(reader.poll(10)).extracting(event -> event.getState().get("name"))
+                        .containsExactly("Before");
+            }
+        } finally {
+            delete(stoppedDirectory);
+        }
+    }
+
+    private void saveCompany(SessionFactory sessionFactory, String name) {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.save(Company.builder().name(name).build());
+        session.getTransaction().commit();
+    }
+
+    private void insertUsers(String prefix, int count) {
+        @Cleanup Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (int i = 0; i < count; i++) {
+            session.save(user(prefix + i));
+        }
+        session.getTransaction().commit();
+    }
+
+    private void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private User user(String username) {
+        return User.builder()
+                .username(username)
+                .personalInfo(PersonalInfo.builder()
+                        .firstname(username)
+                        .lastname("Feed")
+                        .build())
+                .role(Role.USER)
+                .build();
+    }
+}
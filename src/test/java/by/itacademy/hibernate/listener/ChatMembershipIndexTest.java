@@ -0,0 +1,101 @@
+package by.itacademy.hibernate.listener;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatMembershipIndexTest {
+
+    private static final Long CHAT = 1L;
+    private static final Long OTHER_CHAT = 2L;
+
+    /**
+     * Запрос загрузки читает снимок, начатый до коммита изменений: удалённая пара всё ещё в нём есть,
+     * добавленной - нет
+     */
+    @Test
+    void changesCommittedDuringLoadWinOverOlderSnapshot() {
+        ChatMembershipIndex index = new ChatMembershipIndex();
+        index.startLoading();
+
+        index.removed(CHAT, 10L, 100L);
+        index.added(OTHER_CHAT, 20L, 200L);
+        index.loaded(CHAT, 10L, 100L);
+        index.loaded(CHAT, 11L, 101L);
+        index.finishLoading();
+
+        assertThat(index.isMember(CHAT, 10L)).isFalse();
+        assertThat(index.isMember(CHAT, 11L)).isTrue();
+        assertThat(index.isMember(OTHER_CHAT, 20L)).isTrue();
+        assertThat(index.countMembers(CHAT)).isEqualTo(1);
+    }
+
+    @Test
+    void snapshotRowNewerThanChangeIsLoaded() {
+        ChatMembershipIndex index = new ChatMembershipIndex();
+        index.startLoading();
+
+        index.removed(CHAT, 10L, 100L);
+        index.loaded(CHAT, 10L, 105L);
+        index.finishLoading();
+
+        assertThat(index.isMember(CHAT, 10L)).isTrue();
+    }
+
+    /**
+     * Колбэк вставки пришёл после колбэка удаления той же записи
+     */
+    @Test
+    void lateInsertOfDeletedRowIsIgnored() {
+        ChatMembershipIndex index = new ChatMembershipIndex();
+        index.finishLoading();
+
+        index.removed(CHAT, 10L, 100L);
+        index.added(CHAT, 10L, 100L);
+
+        assertThat(index.isMember(CHAT, 10L)).isFalse();
+        assertThat(index.countMembers(CHAT)).isZero();
+    }
+
+    /**
+     * Колбэк удаления старой записи пришёл после колбэка вставки новой записи той же пары
+     */
+    @Test
+    void lateDeleteOfOlderRowIsIgnored() {
+        ChatMembershipIndex index = new ChatMembershipIndex();
+        index.startLoading();
+        index.loaded(CHAT, 10L, 100L);
+        index.finishLoading();
+
+        index.added(CHAT, 10L, 107L);
+        index.removed(CHAT, 10L, 100L);
+
+        assertThat(index.isMember(CHAT, 10L)).isTrue();
+
+        index.removed(CHAT, 10L, 107L);
+        assertThat(index.isMember(CHAT, 10L)).isFalse();
+    }
+
+    @Test
+    void changesAfterLoadAreApplied() {
+        ChatMembershipIndex index = new ChatMembershipIndex();
+        index.startLoading();
+        index.loaded(CHAT, 10L, 100L);
+        index.finishLoading();
+
+        index.removed(CHAT, 10L, 100L);
+        index.added(CHAT, 12L, 110L);
+
+        assertThat(index.findMemberIds(CHAT, null, 10)).containsExactly(12L);
+    }
+
+    @Test
+    void rejectsNegativeLimit() {
+        ChatMembershipIndex index = new ChatMembershipIndex();
+
+        assertThat(index.findMemberIds(CHAT, null, 0)).isEmpty();
+        assertThatThrownBy(() -> index.findMemberIds(CHAT, null, -1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
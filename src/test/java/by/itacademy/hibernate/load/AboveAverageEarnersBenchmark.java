@@ -0,0 +1,115 @@
+package by.itacademy.hibernate.load;
+
+import by.itacademy.hibernate.dao.UserDao;
+import by.itacademy.hibernate.util.HibernateUtil;
+import by.itacademy.hibernate.utils.SqlLogging;
+import by.itacademy.hibernate.utils.SyntheticDataImporter;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Dataset;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Spec;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Замеряет, как отчёт {@link UserDao#isItPossible} масштабируется с числом потоков:
+ * сначала последовательный вариант в одной сессии, затем параллельный на ForkJoinPool из 1, 2, 4, ... потоков
+ * вплоть до числа ядер. Печатает медиану и минимум времени выполнения и ускорение относительно одного потока.
+ * <p>
+ * Параметры задаются системными свойствами:
+ * bench.iterations, bench.warmupIterations, bench.maxThreads,
+ * dataset.companies, dataset.users, dataset.paymentsPerUser, dataset.skew, dataset.seed
+ */
+public class AboveAverageEarnersBenchmark {
+
+    private static final UserDao userDao = UserDao.getInstance();
+
+    public static void main(String[] args) {
+        int iterations = Integer.getInteger("bench.iterations", 10);
+        int warmupIterations = Integer.getInteger("bench.warmupIterations", 3);
+        int maxThreads = Integer.getInteger("bench.maxThreads", Runtime.getRuntime().availableProcessors());
+
+        Spec spec = Spec.builder()
+                .companies(Integer.getInteger("dataset.companies", 100))
+                .users(Integer.getInteger("dataset.users", 200_000))
+                .paymentsPerUser(Integer.getInteger("dataset.paymentsPerUser", 10))
+                .skew(Double.parseDouble(System.getProperty("dataset.skew", "1.0")))
+                .seed(Long.getLong("dataset.seed", 42))
+                .build();
+
+        Properties overrides = SqlLogging.disabled();
+        overrides.put(AvailableSettings.POOL_SIZE, String.valueOf(maxThreads + 1));
+
+        try (SessionFactory sessionFactory = HibernateUtil.buildSessionFactory(overrides)) {
+            long seedStart = System.nanoTime();
+            Dataset dataset = SyntheticDataImporter.importData(sessionFactory, spec);
+            System.out.printf("Seeded %d users, %d payments in %d ms%n", dataset.getUserIds().size(),
+                    dataset.getPaymentIds().size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+
+            long[] sequential = measure(warmupIterations, iterations, () -> {
+                try (Session session = sessionFactory.openSession()) {
+                    session.setDefaultReadOnly(true);
+                    session.beginTransaction();
+                    List<Object[]> result = userDao.isItPossible(session);
+                    session.getTransaction().commit();
+                    return result;
+                }
+            });
+            System.out.printf("%-12s %10s %10s %8s%n", "threads", "median ms", "min ms", "speedup");
+            print("sequential", sequential, median(sequential));
+
+            long singleThreadMedian = 0;
+            for (int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads, maxThreads)) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    long[] parallel = measure(warmupIterations, iterations,
+                            () -> userDao.isItPossible(sessionFactory, pool));
+                    if (threads == 1) {
+                        singleThreadMedian = median(parallel);
+                    }
+                    print(String.valueOf(threads), parallel, singleThreadMedian);
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Возвращает: отсортированные времена выполнения в наносекундах
+     */
+    private static long[] measure(int warmupIterations, int iterations, Supplier<List<Object[]>> report) {
+        for (int i = 0; i < warmupIterations; i++) {
+            report.get();
+        }
+        long[] times = new long[iterations];
+        int earners = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            earners = report.get().size();
+            times[i] = System.nanoTime() - start;
+        }
+        System.out.printf("(%d above-average earners)%n", earners);
+        Arrays.sort(times);
+        return times;
+    }
+
+    private static long median(long[] sortedTimes) {
+        return sortedTimes[sortedTimes.length / 2];
+    }
+
+    private static int nextThreadCount(int threads, int maxThreads) {
+        return threads < maxThreads && threads * 2 > maxThreads ? maxThreads : threads * 2;
+    }
+
+    private static void print(String label, long[] sortedTimes, long baseline) {
+        System.out.printf("%-12s %10.1f %10.1f %7.2fx%n", label,
+                median(sortedTimes) / 1e6, sortedTimes[0] / 1e6, (double) baseline / median(sortedTimes));
+    }
+}
@@ -0,0 +1,168 @@
+package by.itacademy.hibernate.load;
+
+import by.itacademy.hibernate.dao.UserDao;
+import by.itacademy.hibernate.entity.Birthday;
+import by.itacademy.hibernate.entity.User;
+import by.itacademy.hibernate.util.HibernateUtil;
+import by.itacademy.hibernate.utils.SqlLogging;
+import by.itacademy.hibernate.utils.SyntheticDataImporter;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Dataset;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Spec;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Сравнивает возрастные запросы {@link UserDao}, которые считают в базе, с подходом
+ * "прочитать всё и посчитать в Java": возраст по фамилии, сотрудники в диапазоне возрастов,
+ * гистограмма возрастов по компаниям и ближайшие дни рождения. Печатает медиану и минимум времени выполнения.
+ * <p>
+ * Параметры задаются системными свойствами:
+ * bench.iterations, bench.warmupIterations, bench.limit,
+ * dataset.companies, dataset.users, dataset.seed
+ */
+public class AgeAnalyticsBenchmark {
+
+    private static final UserDao userDao = UserDao.getInstance();
+    private static final int BUCKET_YEARS = 10;
+    private static final int MIN_AGE = 30;
+    private static final int MAX_AGE = 35;
+    private static final int BIRTHDAY_WINDOW_DAYS = 30;
+
+    public static void main(String[] args) {
+        int iterations = Integer.getInteger("bench.iterations", 10);
+        int warmupIterations = Integer.getInteger("bench.warmupIterations", 3);
+        int limit = Integer.getInteger("bench.limit", 20);
+
+        Spec spec = Spec.builder()
+                .companies(Integer.getInteger("dataset.companies", 100))
+                .users(Integer.getInteger("dataset.users", 100_000))
+                .paymentsPerUser(0)
+                .chats(0)
+                .seed(Long.getLong("dataset.seed", 42))
+                .build();
+        LocalDate today = LocalDate.now();
+
+        try (SessionFactory sessionFactory = HibernateUtil.buildSessionFactory(SqlLogging.disabled())) {
+            long seedStart = System.nanoTime();
+            Dataset dataset = SyntheticDataImporter.importData(sessionFactory, spec);
+            System.out.printf("Seeded %d users in %d ms%n", dataset.getUserIds().size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+            System.out.printf("%-28s %10s %10s%n", "query", "median ms", "min ms");
+
+            run(sessionFactory, "age by last name: java", warmupIterations, iterations,
+                    session -> findAgeByLastNameInJava(session, "Gates"));
+            run(sessionFactory, "age by last name: sql", warmupIterations, iterations,
+                    session -> userDao.findAgeByLastName(session, "Gates", today));
+
+            run(sessionFactory, "aged between: java", warmupIterations, iterations,
+                    session -> findUsersAgedBetweenInJava(session, today, limit).size());
+            run(sessionFactory, "aged between: sql", warmupIterations, iterations,
+                    session -> userDao.findUsersAgedBetween(session, MIN_AGE, MAX_AGE, today, limit).size());
+
+            run(sessionFactory, "histogram by company: java", warmupIterations, iterations,
+                    session -> findAgeHistogramByCompanyInJava(session, today).size());
+            run(sessionFactory, "histogram by company: sql", warmupIterations, iterations,
+                    session -> userDao.findAgeHistogramByCompany(session, BUCKET_YEARS, today).size());
+
+            run(sessionFactory, "upcoming birthdays: java", warmupIterations, iterations,
+                    session -> findUpcomingBirthdaysInJava(session, today, limit).size());
+            run(sessionFactory, "upcoming birthdays: sql", warmupIterations, iterations,
+                    session -> userDao.findUpcomingBirthdays(session, today, BIRTHDAY_WINDOW_DAYS, limit).size());
+        }
+    }
+
+    private static long findAgeByLastNameInJava(Session session, String lastName) {
+        List<Birthday> birthdays = session.createQuery("SELECT u.personalInfo.birthDate FROM User u " +
+                        "WHERE u.personalInfo.lastname LIKE :lastName ORDER BY u.id ASC", Birthday.class)
+                .setParameter("lastName", "%" + lastName + "%")
+                .getResultList();
+        return birthdays.isEmpty() ? -1 : birthdays.get(0).getAge();
+    }
+
+    private static List<User> findUsersAgedBetweenInJava(Session session, LocalDate today, int limit) {
+        return allUsers(session).stream()
+                .filter(user -> {
+                    long age = age(user, today);
+                    return age >= MIN_AGE && age <= MAX_AGE;
+                })
+                .sorted(Comparator.comparing((User user) -> user.getPersonalInfo().getBirthDate().birthDate())
+                        .reversed()
+                        .thenComparing(User::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private static Map<String, Map<Long, Long>> findAgeHistogramByCompanyInJava(Session session, LocalDate today) {
+        return session.createQuery("SELECT u FROM User u JOIN FETCH u.company", User.class)
+                .getResultList()
+                .stream()
+                .collect(Collectors.groupingBy(user -> user.getCompany().getName(), TreeMap::new,
+                        Collectors.groupingBy(user -> age(user, today) / BUCKET_YEARS * BUCKET_YEARS, TreeMap::new,
+                                Collectors.counting())));
+    }
+
+    private static List<User> findUpcomingBirthdaysInJava(Session session, LocalDate today, int limit) {
+        return allUsers(session).stream()
+                .filter(user -> daysUntilBirthday(user, today) < BIRTHDAY_WINDOW_DAYS)
+                .sorted(Comparator.comparing((User user) -> daysUntilBirthday(user, today))
+                        .thenComparing(User::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private static List<User> allUsers(Session session) {
+        return session.createQuery("SELECT u FROM User u WHERE u.personalInfo.birthDate IS NOT NULL", User.class)
+                .getResultList();
+    }
+
+    private static long age(User user, LocalDate today) {
+        LocalDate birthDate = user.getPersonalInfo().getBirthDate().birthDate();
+        return birthDate.until(today).getYears();
+    }
+
+    private static long daysUntilBirthday(User user, LocalDate today) {
+        MonthDay birthday = MonthDay.from(user.getPersonalInfo().getBirthDate().birthDate());
+        LocalDate next = birthday.atYear(today.getYear());
+        if (next.isBefore(today)) {
+            next = birthday.atYear(today.getYear() + 1);
+        }
+        return ChronoUnit.DAYS.between(today, next);
+    }
+
+    private static void run(SessionFactory sessionFactory, String label, int warmupIterations, int iterations,
+                            Function<Session, Object> query) {
+        for (int i = 0; i < warmupIterations; i++) {
+            execute(sessionFactory, query);
+        }
+        long[] times = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            execute(sessionFactory, query);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-28s %10.1f %10.1f%n", label, times[iterations / 2] / 1e6, times[0] / 1e6);
+    }
+
+    private static Object execute(SessionFactory sessionFactory, Function<Session, Object> query) {
+        try (Session session = sessionFactory.openSession()) {
+            session.setDefaultReadOnly(true);
+            session.beginTransaction();
+            Object result = query.apply(session);
+            session.getTransaction().commit();
+            return result;
+        }
+    }
+}
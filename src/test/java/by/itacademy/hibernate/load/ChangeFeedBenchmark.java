@@ -0,0 +1,145 @@
+package by.itacademy.hibernate.load;
+
+import by.itacademy.hibernate.entity.Payment;
+import by.itacademy.hibernate.entity.User;
+import by.itacademy.hibernate.listener.ChangeFeedPublisher;
+import by.itacademy.hibernate.util.ChangeEvent;
+import by.itacademy.hibernate.util.ChangeEvent.Operation;
+import by.itacademy.hibernate.util.ChangeLog;
+import by.itacademy.hibernate.util.ChangeLogReader;
+import by.itacademy.hibernate.util.HibernateUtil;
+import by.itacademy.hibernate.utils.SqlLogging;
+import by.itacademy.hibernate.utils.SyntheticDataImporter;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Dataset;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Spec;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Пропускная способность журнала изменений:
+ * запись и чтение {@link ChangeLog} напрямую, затем вставка выплат через Hibernate без публикации
+ * и с {@link ChangeFeedPublisher}.
+ * <p>
+ * Параметры задаются системными свойствами:
+ * bench.events, bench.payments, bench.paymentsPerTransaction, bench.directory, dataset.users
+ */
+public class ChangeFeedBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int events = Integer.getInteger("bench.events", 1_000_000);
+        int payments = Integer.getInteger("bench.payments", 20_000);
+        int paymentsPerTransaction = Integer.getInteger("bench.paymentsPerTransaction", 100);
+        String configuredDirectory = System.getProperty("bench.directory");
+        Path directory = configuredDirectory == null
+                ? Files.createTempDirectory("change-feed-bench")
+                : Files.createDirectories(Path.of(configuredDirectory));
+
+        try {
+            measureLog(directory.resolve("raw"), events);
+            measurePublishing(directory.resolve("feed"), payments, paymentsPerTransaction);
+        } finally {
+            if (configuredDirectory == null) {
+                delete(directory);
+            }
+        }
+    }
+
+    private static void measureLog(Path directory, int events) {
+        Map<String, String> state = new LinkedHashMap<>();
+        state.put("version", "0");
+        state.put("amount", "500");
+        state.put("receiver", "12345");
+
+        long start = System.nanoTime();
+        try (ChangeLog changeLog = new ChangeLog(directory)) {
+            for (int i = 0; i < events; i++) {
+                changeLog.append(ChangeEvent.builder()
+                        .timestamp(Instant.now())
+                        .entityName(Payment.class.getName())
+                        .entityId(String.valueOf(i))
+                        .operation(Operation.INSERT)
+                        .state(state)
+                        .build());
+            }
+        }
+        long appendNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long read = 0;
+        try (ChangeLogReader reader = new ChangeLogReader(directory, 0)) {
+            List<ChangeEvent> batch;
+            while (!(batch = reader.poll(10_000)).isEmpty()) {
+                read += batch.size();
+            }
+        }
+        long readNanos = System.nanoTime() - start;
+
+        System.out.printf("change log: append %.0f events/s, read %.0f events/s (%d events)%n",
+                events * 1e9 / appendNanos, read * 1e9 / readNanos, read);
+    }
+
+    private static void measurePublishing(Path directory, int payments, int paymentsPerTransaction) {
+        Spec spec = Spec.builder()
+                .users(Integer.getInteger("dataset.users", 1_000))
+                .paymentsPerUser(0)
+                .chats(0)
+                .build();
+
+        try (SessionFactory sessionFactory = HibernateUtil.buildSessionFactory(SqlLogging.disabled())) {
+            Dataset dataset = SyntheticDataImporter.importData(sessionFactory, spec);
+            Random random = new Random(spec.getSeed());
+
+            insertPayments(sessionFactory, dataset, random, payments, paymentsPerTransaction); // прогрев
+            double withoutFeed = insertPayments(sessionFactory, dataset, random, payments, paymentsPerTransaction);
+
+            try (ChangeLog changeLog = new ChangeLog(directory)) {
+                ChangeFeedPublisher publisher = ChangeFeedPublisher.attach(sessionFactory, changeLog);
+                double withFeed = insertPayments(sessionFactory, dataset, random, payments, paymentsPerTransaction);
+
+                System.out.printf("payment inserts: feed off %.0f/s, feed on %.0f/s (%d published, %d failed)%n",
+                        withoutFeed, withFeed, publisher.getPublished(), publisher.getFailures());
+            }
+        }
+    }
+
+    /**
+     * Возвращает: число вставленных выплат в секунду
+     */
+    private static double insertPayments(SessionFactory sessionFactory, Dataset dataset, Random random,
+                                         int payments, int paymentsPerTransaction) {
+        List<Long> userIds = dataset.getUserIds();
+        long start = System.nanoTime();
+        for (int i = 0; i < payments; i += paymentsPerTransaction) {
+            try (Session session = sessionFactory.openSession()) {
+                session.beginTransaction();
+                for (int j = 0; j < paymentsPerTransaction; j++) {
+                    session.save(Payment.builder()
+                            .receiver(session.load(User.class, userIds.get(random.nextInt(userIds.size()))))
+                            .amount(100 + random.nextInt(900))
+                            .build());
+                }
+                session.getTransaction().commit();
+            }
+        }
+        return payments * 1e9 / (System.nanoTime() - start);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
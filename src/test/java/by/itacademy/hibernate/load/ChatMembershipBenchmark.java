@@ -0,0 +1,139 @@
+package by.itacademy.hibernate.load;
+
+import by.itacademy.hibernate.dao.ChatMembershipDao;
+import by.itacademy.hibernate.entity.User;
+import by.itacademy.hibernate.entity.UserChat;
+import by.itacademy.hibernate.listener.ChatMembershipIndex;
+import by.itacademy.hibernate.util.HibernateUtil;
+import by.itacademy.hibernate.utils.SqlLogging;
+import by.itacademy.hibernate.utils.SyntheticDataImporter;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Dataset;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Spec;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Сравнивает запросы участия в чатах через {@link ChatMembershipIndex} с запросами к базе
+ * на чатах, в которых состоят все сотрудники (по умолчанию 100 000 участников).
+ * Печатает среднее время операции в микросекундах и объём памяти битовых карт.
+ * <p>
+ * Параметры задаются системными свойствами:
+ * bench.lookups, bench.pages, bench.pageSize, dataset.users, dataset.chats, dataset.seed
+ */
+public class ChatMembershipBenchmark {
+
+    public static void main(String[] args) {
+        int lookups = Integer.getInteger("bench.lookups", 10_000);
+        int pages = Integer.getInteger("bench.pages", 100);
+        int pageSize = Integer.getInteger("bench.pageSize", 100);
+        int chats = Integer.getInteger("dataset.chats", 2);
+
+        Spec spec = Spec.builder()
+                .companies(10)
+                .users(Integer.getInteger("dataset.users", 100_000))
+                .paymentsPerUser(0)
+                .chats(chats)
+                .chatsPerUser(chats)
+                .seed(Long.getLong("dataset.seed", 42))
+                .build();
+
+        try (SessionFactory sessionFactory = HibernateUtil.buildSessionFactory(SqlLogging.disabled())) {
+            long seedStart = System.nanoTime();
+            Dataset dataset = SyntheticDataImporter.importData(sessionFactory, spec);
+            System.out.printf("Seeded %d users in %d chats in %d ms%n", dataset.getUserIds().size(), chats,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+
+            long indexStart = System.nanoTime();
+            ChatMembershipIndex index = ChatMembershipIndex.attach(sessionFactory);
+            ChatMembershipDao chatMembershipDao = new ChatMembershipDao(index);
+            Long chatId = dataset.getChatIds().get(0);
+            System.out.printf("Index loaded in %d ms: %d members, %d bytes for chat %d%n",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - indexStart),
+                    index.countMembers(chatId), index.sizeInBytes(chatId), chatId);
+
+            List<Long> userIds = dataset.getUserIds();
+            Random random = new Random(spec.getSeed());
+
+            try (Session session = sessionFactory.openSession()) {
+                session.setDefaultReadOnly(true);
+                session.beginTransaction();
+
+                System.out.printf("%-32s %12s%n", "operation", "avg us");
+                report("count: index", lookups, () -> (int) chatMembershipDao.countMembers(chatId));
+                report("count: COUNT query", 100, () -> session.createQuery(
+                                "SELECT COUNT(uc) FROM UserChat uc WHERE uc.chat.id = :chatId", Long.class)
+                        .setParameter("chatId", chatId)
+                        .getSingleResult()
+                        .intValue());
+                report("count: load all UserChat", 1, () -> {
+                    int size = session.createQuery("FROM UserChat uc WHERE uc.chat.id = :chatId", UserChat.class)
+                            .setParameter("chatId", chatId)
+                            .getResultList()
+                            .size();
+                    session.clear();
+                    return size;
+                });
+
+                report("isMember: index", lookups, () ->
+                        chatMembershipDao.isMember(chatId, randomUserId(userIds, random)) ? 1 : 0);
+                report("isMember: EXISTS query", lookups / 10, () -> session.createQuery(
+                                "SELECT COUNT(uc) FROM UserChat uc WHERE uc.chat.id = :chatId AND uc.user.id = :userId",
+                                Long.class)
+                        .setParameter("chatId", chatId)
+                        .setParameter("userId", randomUserId(userIds, random))
+                        .getSingleResult()
+                        .intValue());
+
+                report("page: index + load users", pages, new IntSupplier() {
+                    private Long after;
+
+                    @Override
+                    public int getAsInt() {
+                        List<User> page = chatMembershipDao.findMembers(session, chatId, after, pageSize);
+                        after = page.get(page.size() - 1).getId();
+                        session.clear();
+                        return page.size();
+                    }
+                });
+                report("page: keyset query", pages, new IntSupplier() {
+                    private Long after = 0L;
+
+                    @Override
+                    public int getAsInt() {
+                        List<User> page = session.createQuery("SELECT u FROM UserChat uc JOIN uc.user u " +
+                                        "WHERE uc.chat.id = :chatId AND u.id > :after ORDER BY u.id ASC", User.class)
+                                .setParameter("chatId", chatId)
+                                .setParameter("after", after)
+                                .setMaxResults(pageSize)
+                                .getResultList();
+                        after = page.get(page.size() - 1).getId();
+                        session.clear();
+                        return page.size();
+                    }
+                });
+
+                session.getTransaction().commit();
+            }
+        }
+    }
+
+    private static Long randomUserId(List<Long> userIds, Random random) {
+        return userIds.get(random.nextInt(userIds.size()));
+    }
+
+    private static void report(String operation, int iterations, IntSupplier work) {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += work.getAsInt();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-32s %12.2f   (checksum %d)%n", operation,
+                TimeUnit.NANOSECONDS.toMicros(elapsed) / (double) iterations, checksum);
+    }
+}
@@ -0,0 +1,359 @@
+package by.itacademy.hibernate.load;
+
+import by.itacademy.hibernate.dao.UserDao;
+import by.itacademy.hibernate.entity.Payment;
+import by.itacademy.hibernate.entity.PersonalInfo;
+import by.itacademy.hibernate.entity.User;
+import by.itacademy.hibernate.util.HibernateUtil;
+import by.itacademy.hibernate.utils.SqlLogging;
+import by.itacademy.hibernate.utils.SyntheticDataImporter;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Dataset;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Spec;
+import by.itacademy.hibernate.utils.ZipfSampler;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочный тест UserDao: наполняет базу синтетическими данными ({@link SyntheticDataImporter}),
+ * затем N потоков в течение заданного времени выполняют смесь операций чтения и записи.
+ * В конце печатает пропускную способность, перцентили задержек успешных и неудачных операций
+ * и загрузку пула соединений, а сырые интервальные гистограммы пишет в HdrHistogram-лог.
+ * Пул - встроенный пул Hibernate, обёрнутый {@link MeasuredConnectionProvider}: загрузка и время выдачи соединения
+ * измеряются в самом пуле. Печать SQL из hibernate.cfg.xml отключается.
+ * <p>
+ * Параметры задаются системными свойствами:
+ * load.threads, load.durationSeconds, load.warmupSeconds, load.mix (operation=weight,...), load.output,
+ * dataset.companies, dataset.users, dataset.paymentsPerUser, dataset.chats, dataset.chatsPerUser,
+ * dataset.skew, dataset.seed
+ */
+public class LoadGenerator {
+
+    private static final String DEFAULT_MIX = "FIND_ALL_BY_FIRST_NAME=15,FIND_ALL_BY_COMPANY_NAME=10," +
+            "FIND_ALL_PAYMENTS_BY_COMPANY_NAME=5,FIND_AVERAGE_PAYMENT_BY_NAMES=20," +
+            "FIND_LIMITED_USERS_ORDERED_BY_BIRTHDAY=10,FIND_HIGHEST_PAYMENT=5,FIND_USER_RANK_WITHIN_COMPANY=5," +
+            "SAVE_PAYMENT=20,UPDATE_PAYMENT=10";
+    private static final int DEFAULT_POOL_SIZE = 20;
+    private static final long REPORT_INTERVAL_MILLIS = 1_000;
+
+    private static final UserDao userDao = UserDao.getInstance();
+
+    private final SessionFactory sessionFactory;
+    private final Dataset dataset;
+    private final Map<Operation, Integer> mix;
+    private final int totalWeight;
+    private final ZipfSampler userSampler;
+    private final ZipfSampler companySampler;
+    private final ZipfSampler paymentSampler;
+
+    private final MeasuredConnectionProvider connectionProvider;
+    private final Map<Operation, Recorder> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, Histogram> totals = new EnumMap<>(Operation.class);
+    private final Map<Operation, Recorder> failureLatencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, Histogram> failureTotals = new EnumMap<>(Operation.class);
+    private final Histogram connectionAcquireTotal = new Histogram(3);
+
+    private volatile boolean running = true;
+    private volatile boolean measuring;
+
+    public LoadGenerator(SessionFactory sessionFactory, Dataset dataset, Map<Operation, Integer> mix, double skew) {
+        this.sessionFactory = sessionFactory;
+        this.connectionProvider = MeasuredConnectionProvider.of(sessionFactory);
+        this.dataset = dataset;
+        this.mix = mix;
+        this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        this.userSampler = new ZipfSampler(dataset.getUserIds().size(), skew);
+        this.companySampler = new ZipfSampler(dataset.getCompanyNames().size(), skew);
+        this.paymentSampler = new ZipfSampler(Math.max(1, dataset.getPaymentIds().size()), skew);
+
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new Recorder(3));
+            totals.put(operation, new Histogram(3));
+            failureLatencies.put(operation, new Recorder(3));
+            failureTotals.put(operation, new Histogram(3));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.getInteger("load.threads", 8);
+        long durationSeconds = Long.getLong("load.durationSeconds", 60);
+        long warmupSeconds = Long.getLong("load.warmupSeconds", 5);
+        Map<Operation, Integer> mix = parseMix(System.getProperty("load.mix", DEFAULT_MIX));
+        File output = new File(System.getProperty("load.output", "target/load"));
+
+        Spec spec = Spec.builder()
+                .companies(Integer.getInteger("dataset.companies", 10))
+                .users(Integer.getInteger("dataset.users", 10_000))
+                .paymentsPerUser(Integer.getInteger("dataset.paymentsPerUser", 10))
+                .chats(Integer.getInteger("dataset.chats", 10))
+                .chatsPerUser(Integer.getInteger("dataset.chatsPerUser", 2))
+                .skew(Double.parseDouble(System.getProperty("dataset.skew", "1.0")))
+                .seed(Long.getLong("dataset.seed", 42))
+                .build();
+
+        Properties overrides = SqlLogging.disabled();
+        overrides.setProperty(AvailableSettings.CONNECTION_PROVIDER, MeasuredConnectionProvider.class.getName());
+
+        try (SessionFactory sessionFactory = HibernateUtil.buildSessionFactory(overrides)) {
+            long seedStart = System.nanoTime();
+            Dataset dataset = SyntheticDataImporter.importData(sessionFactory, spec);
+            System.out.printf("Seeded %d users, %d payments in %d ms%n", dataset.getUserIds().size(),
+                    dataset.getPaymentIds().size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+
+            new LoadGenerator(sessionFactory, dataset, mix, spec.getSkew())
+                    .run(threads, warmupSeconds, durationSeconds, output);
+        }
+    }
+
+    public void run(int threads, long warmupSeconds, long durationSeconds, File output)
+            throws InterruptedException, FileNotFoundException {
+        output.mkdirs();
+        File logFile = new File(output, "load-" + System.currentTimeMillis() + ".hlog");
+        HistogramLogWriter logWriter = new HistogramLogWriter(logFile);
+        long startMillis = System.currentTimeMillis();
+        logWriter.outputLogFormatVersion();
+        logWriter.outputStartTime(startMillis);
+        logWriter.setBaseTime(startMillis);
+        logWriter.outputLegend();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            long seed = i;
+            workers.submit(() -> work(new Random(seed)));
+        }
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(() -> collectInterval(logWriter),
+                REPORT_INTERVAL_MILLIS, REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        reporter.submit(this::startMeasuring);
+        long measureStart = System.nanoTime();
+        TimeUnit.SECONDS.sleep(durationSeconds);
+
+        running = false;
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+        double elapsedSeconds = (System.nanoTime() - measureStart) / 1e9;
+
+        reporter.shutdown();
+        reporter.awaitTermination(1, TimeUnit.MINUTES);
+        collectInterval(logWriter);
+        logWriter.close();
+
+        printSummary(threads, elapsedSeconds, logFile);
+    }
+
+    private void work(Random random) {
+        while (running) {
+            Operation operation = pick(random);
+            long start = System.nanoTime();
+            Map<Operation, Recorder> recorders = latencies;
+            try (Session session = sessionFactory.openSession()) {
+                session.beginTransaction();
+                operation.execute(this, session, random);
+                session.getTransaction().commit();
+            } catch (RuntimeException e) {
+                recorders = failureLatencies;
+            }
+            recorders.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+    }
+
+    private Operation pick(Random random) {
+        int ticket = random.nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            ticket -= entry.getValue();
+            if (ticket < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty operation mix");
+    }
+
+    /**
+     * Вызывается только из потока reporter, поэтому суммарные гистограммы не синхронизируются
+     */
+    private void collectInterval(HistogramLogWriter logWriter) {
+        for (Operation operation : Operation.values()) {
+            collect(logWriter, latencies.get(operation), operation.name(), totals.get(operation));
+            collect(logWriter, failureLatencies.get(operation), operation.name() + "_FAILED",
+                    failureTotals.get(operation));
+        }
+        collect(logWriter, connectionProvider.getAcquireLatencies(), "CONNECTION_ACQUIRE", connectionAcquireTotal);
+    }
+
+    private void collect(HistogramLogWriter logWriter, Recorder recorder, String tag, Histogram total) {
+        Histogram interval = recorder.getIntervalHistogram();
+        if (measuring && interval.getTotalCount() > 0) {
+            interval.setTag(tag);
+            logWriter.outputIntervalHistogram(interval);
+            total.add(interval);
+        }
+    }
+
+    private void startMeasuring() {
+        for (Operation operation : Operation.values()) {
+            latencies.get(operation).reset();
+            failureLatencies.get(operation).reset();
+        }
+        connectionProvider.reset();
+        measuring = true;
+    }
+
+    private void printSummary(int threads, double elapsedSeconds, File logFile) {
+        System.out.printf("%nThreads: %d, measured: %.1f s%n", threads, elapsedSeconds);
+        System.out.printf("%-40s %10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "ops/s", "errors", "p50 us", "p95 us", "p99 us", "p999 us", "max us");
+
+        long totalCount = 0;
+        long totalErrors = 0;
+        for (Operation operation : mix.keySet()) {
+            Histogram histogram = totals.get(operation);
+            long operationErrors = failureTotals.get(operation).getTotalCount();
+            totalCount += histogram.getTotalCount();
+            totalErrors += operationErrors;
+            System.out.printf("%-40s %10d %10.1f %8d %10d %10d %10d %10d %10d%n",
+                    operation, histogram.getTotalCount(), histogram.getTotalCount() / elapsedSeconds, operationErrors,
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(95),
+                    histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+                    histogram.getMaxValue());
+        }
+        long attempts = totalCount + totalErrors;
+        System.out.printf("%-40s %10d %10.1f %8d (error rate %.4f)%n", "TOTAL", totalCount,
+                totalCount / elapsedSeconds, totalErrors, attempts == 0 ? 0.0 : (double) totalErrors / attempts);
+
+        for (Operation operation : mix.keySet()) {
+            Histogram failures = failureTotals.get(operation);
+            if (failures.getTotalCount() > 0) {
+                System.out.printf("%-40s %10d %10s %8s %10d %10d %10d %10d %10d%n",
+                        operation + " (failed)", failures.getTotalCount(), "", "",
+                        failures.getValueAtPercentile(50), failures.getValueAtPercentile(95),
+                        failures.getValueAtPercentile(99), failures.getValueAtPercentile(99.9),
+                        failures.getMaxValue());
+            }
+        }
+
+        int poolSize = poolSize();
+        long maxInUse = connectionProvider.getMaxInUse();
+        System.out.printf("Connection pool: size %d, max in use %d (%.0f%%), acquire p50 %d us, p99 %d us, p999 %d us%n",
+                poolSize, maxInUse, 100.0 * maxInUse / poolSize,
+                connectionAcquireTotal.getValueAtPercentile(50), connectionAcquireTotal.getValueAtPercentile(99),
+                connectionAcquireTotal.getValueAtPercentile(99.9));
+        System.out.println("Raw histograms: " + logFile.getAbsolutePath());
+    }
+
+    private int poolSize() {
+        Object poolSize = sessionFactory.getProperties().get(AvailableSettings.POOL_SIZE);
+        return poolSize == null ? DEFAULT_POOL_SIZE : Integer.parseInt(poolSize.toString());
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(Operation.valueOf(parts[0].trim()), weight);
+            }
+        }
+        return weights;
+    }
+
+    private Long randomUserId(Random random) {
+        return dataset.getUserIds().get(userSampler.next(random));
+    }
+
+    private PersonalInfo randomPersonalInfo(Random random) {
+        return dataset.getPersonalInfos().get(userSampler.next(random));
+    }
+
+    private String randomCompanyName(Random random) {
+        return dataset.getCompanyNames().get(companySampler.next(random));
+    }
+
+    private Long randomPaymentId(Random random) {
+        return dataset.getPaymentIds().get(paymentSampler.next(random));
+    }
+
+    public enum Operation {
+        FIND_ALL_BY_FIRST_NAME {
+            @Override
+            void execute(LoadGenerator generator, Session session, Random random) {
+                userDao.findAllByFirstName(session, generator.randomPersonalInfo(random).getFirstname());
+            }
+        },
+        FIND_ALL_BY_COMPANY_NAME {
+            @Override
+            void execute(LoadGenerator generator, Session session, Random random) {
+                userDao.findAllByCompanyName(session, generator.randomCompanyName(random));
+            }
+        },
+        FIND_ALL_PAYMENTS_BY_COMPANY_NAME {
+            @Override
+            void execute(LoadGenerator generator, Session session, Random random) {
+                userDao.findAllPaymentsByCompanyName(session, generator.randomCompanyName(random));
+            }
+        },
+        FIND_AVERAGE_PAYMENT_BY_NAMES {
+            @Override
+            void execute(LoadGenerator generator, Session session, Random random) {
+                PersonalInfo personalInfo = generator.randomPersonalInfo(random);
+                userDao.findAveragePaymentAmountByFirstAndLastNames(session,
+                        personalInfo.getFirstname(), personalInfo.getLastname());
+            }
+        },
+        FIND_LIMITED_USERS_ORDERED_BY_BIRTHDAY {
+            @Override
+            void execute(LoadGenerator generator, Session session, Random random) {
+                userDao.findLimitedUsersOrderedByBirthday(session, 10);
+            }
+        },
+        FIND_HIGHEST_PAYMENT {
+            @Override
+            void execute(LoadGenerator generator, Session session, Random random) {
+                userDao.findHighestPaymentAmongAllUsers(session);
+            }
+        },
+        FIND_USER_RANK_WITHIN_COMPANY {
+            @Override
+            void execute(LoadGenerator generator, Session session, Random random) {
+                User user = session.get(User.class, generator.randomUserId(random));
+                userDao.findUserRankWithinCompany(session, user.getUsername());
+            }
+        },
+        SAVE_PAYMENT {
+            @Override
+            void execute(LoadGenerator generator, Session session, Random random) {
+                Payment payment = Payment.builder()
+                        .receiver(session.load(User.class, generator.randomUserId(random)))
+                        .amount(100 + random.nextInt(901))
+                        .build();
+                session.save(payment);
+            }
+        },
+        UPDATE_PAYMENT {
+            @Override
+            void execute(LoadGenerator generator, Session session, Random random) {
+                Payment payment = session.get(Payment.class, generator.randomPaymentId(random));
+                payment.setAmount(payment.getAmount() + 1);
+            }
+        };
+
+        abstract void execute(LoadGenerator generator, Session session, Random random);
+    }
+}
@@ -0,0 +1,69 @@
+package by.itacademy.hibernate.load;
+
+import org.HdrHistogram.Recorder;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Встроенный пул соединений Hibernate, который измеряет время выдачи соединения (в микросекундах)
+ * и наибольшее число одновременно выданных соединений. Подключается свойством hibernate.connection.provider_class
+ */
+public class MeasuredConnectionProvider extends DriverManagerConnectionProviderImpl {
+
+    private final Recorder acquireLatencies = new Recorder(3);
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final LongAccumulator maxInUse = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Возвращает: пул фабрики сессий, построенной с этим провайдером
+     */
+    public static MeasuredConnectionProvider of(SessionFactory sessionFactory) {
+        ConnectionProvider provider = sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        if (!(provider instanceof MeasuredConnectionProvider measured)) {
+            throw new IllegalStateException("Connection provider is not measured: " + provider);
+        }
+        return measured;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = super.getConnection();
+        acquireLatencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        maxInUse.accumulate(inUse.incrementAndGet());
+        return connection;
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        inUse.decrementAndGet();
+        super.closeConnection(connection);
+    }
+
+    public Recorder getAcquireLatencies() {
+        return acquireLatencies;
+    }
+
+    public long getMaxInUse() {
+        return maxInUse.get();
+    }
+
+    /**
+     * Начинает новый интервал измерений: сбрасывает задержки и максимум выданных соединений
+     */
+    public void reset() {
+        acquireLatencies.reset();
+        maxInUse.reset();
+        maxInUse.accumulate(inUse.get());
+    }
+}
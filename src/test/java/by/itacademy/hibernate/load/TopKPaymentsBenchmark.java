@@ -0,0 +1,90 @@
+package by.itacademy.hibernate.load;
+
+import by.itacademy.hibernate.dao.UserDao;
+import by.itacademy.hibernate.util.HibernateUtil;
+import by.itacademy.hibernate.utils.EmbeddedDatabase;
+import by.itacademy.hibernate.utils.SyntheticDataImporter;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Dataset;
+import by.itacademy.hibernate.utils.SyntheticDataImporter.Spec;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Сравнивает запросы "первые K в группе" {@link UserDao} на оконных функциях
+ * с потоковым чтением и отбором кучей ограниченного размера.
+ * По умолчанию встроенная база H2 наполняется 1 000 000 выплат. Печатает медиану и минимум времени выполнения.
+ * <p>
+ * Параметры задаются системными свойствами:
+ * bench.iterations, bench.warmupIterations, bench.k,
+ * dataset.companies, dataset.users, dataset.paymentsPerUser, dataset.skew, dataset.seed
+ */
+public class TopKPaymentsBenchmark {
+
+    private static final UserDao userDao = UserDao.getInstance();
+
+    public static void main(String[] args) {
+        int iterations = Integer.getInteger("bench.iterations", 5);
+        int warmupIterations = Integer.getInteger("bench.warmupIterations", 2);
+        int k = Integer.getInteger("bench.k", 3);
+
+        Spec spec = Spec.builder()
+                .companies(Integer.getInteger("dataset.companies", 100))
+                .users(Integer.getInteger("dataset.users", 100_000))
+                .paymentsPerUser(Integer.getInteger("dataset.paymentsPerUser", 10))
+                .chats(0)
+                .skew(Double.parseDouble(System.getProperty("dataset.skew", "1.0")))
+                .seed(Long.getLong("dataset.seed", 42))
+                .build();
+
+        Properties database = EmbeddedDatabase.h2("top-k-benchmark");
+        try (SessionFactory sessionFactory = HibernateUtil.buildSessionFactory(database)) {
+            long seedStart = System.nanoTime();
+            Dataset dataset = SyntheticDataImporter.importData(sessionFactory, spec);
+            System.out.printf("Seeded %d users, %d payments in %d ms%n", dataset.getUserIds().size(),
+                    dataset.getPaymentIds().size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+            System.out.printf("%-32s %10s %10s %8s%n", "query", "median ms", "min ms", "rows");
+
+            run(sessionFactory, "top earners by company: window", warmupIterations, iterations,
+                    session -> userDao.findTopEarnersByCompanyWindowed(session, k));
+            run(sessionFactory, "top earners by company: heap", warmupIterations, iterations,
+                    session -> userDao.findTopEarnersByCompanyStreaming(session, k));
+
+            run(sessionFactory, "top payments by user: window", warmupIterations, iterations,
+                    session -> userDao.findTopPaymentsByUserWindowed(session, k));
+            run(sessionFactory, "top payments by user: heap", warmupIterations, iterations,
+                    session -> userDao.findTopPaymentsByUserStreaming(session, k));
+        }
+    }
+
+    private static void run(SessionFactory sessionFactory, String label, int warmupIterations, int iterations,
+                            Function<Session, List<Object[]>> query) {
+        for (int i = 0; i < warmupIterations; i++) {
+            execute(sessionFactory, query);
+        }
+        long[] times = new long[iterations];
+        int rows = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            rows = execute(sessionFactory, query).size();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-32s %10.1f %10.1f %8d%n", label, times[iterations / 2] / 1e6, times[0] / 1e6, rows);
+    }
+
+    private static List<Object[]> execute(SessionFactory sessionFactory, Function<Session, List<Object[]>> query) {
+        try (Session session = sessionFactory.openSession()) {
+            session.setDefaultReadOnly(true);
+            session.beginTransaction();
+            List<Object[]> result = query.apply(session);
+            session.getTransaction().commit();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package by.itacademy.hibernate.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedTopKTest {
+
+    private static final Comparator<int[]> BY_SCORE_DESC = Comparator.comparingInt((int[] e) -> e[1]).reversed();
+
+    @Test
+    void keepsBestElementsInOrder() {
+        BoundedTopK<Integer> topK = new BoundedTopK<>(3, Comparator.reverseOrder());
+        List.of(5, 1, 9, 7, 3, 8).forEach(topK::offer);
+
+        assertThat(topK.drain()).containsExactly(9, 8, 7);
+        assertThat(topK.isEmpty()).isTrue();
+    }
+
+    @Test
+    void returnsWholeGroupWhenKExceedsGroupSize() {
+        BoundedTopK<Integer> topK = new BoundedTopK<>(10, Comparator.reverseOrder());
+        List.of(2, 3, 1).forEach(topK::offer);
+
+        assertThat(topK.drain()).containsExactly(3, 2, 1);
+    }
+
+    @Test
+    void keepsEarlierOfTiedElements() {
+        BoundedTopK<int[]> topK = new BoundedTopK<>(2, BY_SCORE_DESC);
+        topK.offer(new int[]{1, 5});
+        topK.offer(new int[]{2, 1});
+        topK.offer(new int[]{3, 5});
+        topK.offer(new int[]{4, 5});
+
+        assertThat(topK.drain()).extracting(e -> e[0]).containsExactlyInAnyOrder(1, 3);
+    }
+
+    @Test
+    void tieBreakerDecidesBetweenEqualScores() {
+        BoundedTopK<int[]> topK = new BoundedTopK<>(2, BY_SCORE_DESC.thenComparingInt(e -> e[0]));
+        topK.offer(new int[]{4, 5});
+        topK.offer(new int[]{3, 5});
+        topK.offer(new int[]{1, 5});
+        topK.offer(new int[]{2, 9});
+
+        assertThat(topK.drain()).extracting(e -> e[0]).containsExactly(2, 1);
+    }
+
+    @Test
+    void isReusableAfterDrain() {
+        BoundedTopK<Integer> topK = new BoundedTopK<>(1, Comparator.reverseOrder());
+        topK.offer(4);
+        assertThat(topK.drain()).containsExactly(4);
+
+        topK.offer(2);
+        assertThat(topK.drain()).containsExactly(2);
+    }
+
+    @Test
+    void rejectsNonPositiveK() {
+        assertThatThrownBy(() -> new BoundedTopK<Integer>(0, Comparator.naturalOrder()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
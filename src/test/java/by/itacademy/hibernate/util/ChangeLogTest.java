@@ -0,0 +1,203 @@
+package by.itacademy.hibernate.util;
+
+import by.itacademy.hibernate.util.ChangeEvent.Operation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChangeLogTest {
+
+    private static final int SMALL_SEGMENT = 1_024;
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("change-log");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    void readsBackAppendedEventsInOrder() {
+        try (ChangeLog changeLog = new ChangeLog(directory)) {
+            assertThat(changeLog.append(event("1", Map.of("amount", "100")))).isZero();
+            assertThat(changeLog.append(ChangeEvent.builder()
+                    .timestamp(Instant.now())
+                    .entityName("Company")
+                    .entityId("2")
+                    .operation(Operation.DELETE)
+                    .state(Map.of())
+                    .build())).isEqualTo(1);
+        }
+
+        try (ChangeLogReader reader = new ChangeLogReader(directory, 0)) {
+            List<ChangeEvent> events = reader.poll(10);
+
+            assertThat(events).extracting(ChangeEvent::getOffset).containsExactly(0L, 1L);
+            assertThat(events.get(0).getEntityName()).isEqualTo("Payment");
+            assertThat(events.get(0).getEntityId()).isEqualTo("1");
+            assertThat(events.get(0).getOperation()).isEqualTo(Operation.UPDATE);
+            assertThat(events.get(0).getState()).isEqualTo(Map.of("amount", "100"));
+            assertThat(events).extracting(ChangeEvent::getVersion).containsExactly(3L, null);
+            assertThat(reader.getNextOffset()).isEqualTo(2);
+            assertThat(reader.poll(10)).isEmpty();
+        }
+    }
+
+    @Test
+    void rollsSegmentsAndKeepsOffsetsAcrossRestarts() {
+        try (ChangeLog changeLog = new ChangeLog(directory, SMALL_SEGMENT)) {
+            for (int i = 0; i < 50; i++) {
+                changeLog.append(event(String.valueOf(i), Map.of("index", String.valueOf(i))));
+            }
+        }
+        try (ChangeLog changeLog = new ChangeLog(directory, SMALL_SEGMENT)) {
+            assertThat(changeLog.getNextOffset()).isEqualTo(50);
+            assertThat(changeLog.append(event("50", Map.of()))).isEqualTo(50);
+        }
+
+        try (Stream<Path> segments = Files.list(directory)) {
+            assertThat(segments.count()).isGreaterThan(1);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        try (ChangeLogReader reader = new ChangeLogReader(directory, 0)) {
+            assertThat(reader.poll(100)).extracting(ChangeEvent::getEntityId)
+                    .containsExactlyElementsOf(IntStream.rangeClosed(0, 50).mapToObj(String::valueOf).collect(toList()));
+        }
+    }
+
+    @Test
+    void readerTailsLogWhileItIsWritten() {
+        try (ChangeLog changeLog = new ChangeLog(directory, SMALL_SEGMENT);
+             ChangeLogReader reader = new ChangeLogReader(directory, 0)) {
+            for (int i = 0; i < 30; i++) {
+                changeLog.append(event(String.valueOf(i), Map.of()));
+                List<ChangeEvent> events = reader.poll(10);
+                assertThat(events).extracting(ChangeEvent::getOffset).containsExactly((long) i);
+            }
+        }
+    }
+
+    @Test
+    void resumesFromSavedOffset() {
+        long savedOffset;
+        try (ChangeLog changeLog = new ChangeLog(directory, SMALL_SEGMENT)) {
+            for (int i = 0; i < 20; i++) {
+                changeLog.append(event(String.valueOf(i), Map.of()));
+            }
+            try (ChangeLogReader reader = new ChangeLogReader(directory, 0)) {
+                assertThat(reader.poll(12)).hasSize(12);
+                savedOffset = reader.getNextOffset();
+            }
+            changeLog.append(event("20", Map.of()));
+        }
+
+        try (ChangeLogReader reader = new ChangeLogReader(directory, savedOffset)) {
+            assertThat(reader.poll(100)).extracting(ChangeEvent::getOffset)
+                    .containsExactly(12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L, 20L);
+        }
+    }
+
+    @Test
+    void discardsTornRecordOnRecovery() throws IOException {
+        int tornPosition;
+        try (ChangeLog changeLog = new ChangeLog(directory)) {
+            changeLog.append(event("0", Map.of()));
+            tornPosition = ChangeLog.HEADER_SIZE + payloadLength();
+            changeLog.append(event("1", Map.of()));
+        }
+        corruptChecksum(ChangeLog.segmentPath(directory, 0), tornPosition);
+
+        try (ChangeLog changeLog = new ChangeLog(directory)) {
+            assertThat(changeLog.getNextOffset()).isEqualTo(1);
+            changeLog.append(event("replacement", Map.of()));
+        }
+        try (ChangeLogReader reader = new ChangeLogReader(directory, 0)) {
+            assertThat(reader.poll(10)).extracting(ChangeEvent::getEntityId).containsExactly("0", "replacement");
+        }
+    }
+
+    @Test
+    void secondWriterFailsWhileLogIsOpen() {
+        try (ChangeLog changeLog = new ChangeLog(directory)) {
+            changeLog.append(event("0", Map.of()));
+
+            assertThatThrownBy(() -> new ChangeLog(directory))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining(directory.toString());
+            assertThat(changeLog.append(event("1", Map.of()))).isEqualTo(1);
+        }
+
+        try (ChangeLog changeLog = new ChangeLog(directory)) {
+            assertThat(changeLog.getNextOffset()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void storesStringsLongerThan64Kb() {
+        String id = "id".repeat(40_000);
+        String value = "значение".repeat(10_000);
+        try (ChangeLog changeLog = new ChangeLog(directory)) {
+            changeLog.append(event(id, Map.of("comment", value)));
+        }
+
+        try (ChangeLogReader reader = new ChangeLogReader(directory, 0)) {
+            List<ChangeEvent> events = reader.poll(10);
+
+            assertThat(events).hasSize(1);
+            assertThat(events.get(0).getEntityId()).isEqualTo(id);
+            assertThat(events.get(0).getState()).isEqualTo(Map.of("comment", value));
+        }
+    }
+
+    private int payloadLength() throws IOException {
+        try (FileChannel channel = FileChannel.open(ChangeLog.segmentPath(directory, 0), StandardOpenOption.READ)) {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(length, 0);
+            return length.getInt(0);
+        }
+    }
+
+    private void corruptChecksum(Path segment, int position) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 0xDEAD), position + Integer.BYTES);
+        }
+    }
+
+    private ChangeEvent event(String id, Map<String, String> state) {
+        return ChangeEvent.builder()
+                .timestamp(Instant.now())
+                .entityName("Payment")
+                .entityId(id)
+                .operation(Operation.UPDATE)
+                .version(3L)
+                .state(state)
+                .build();
+    }
+}
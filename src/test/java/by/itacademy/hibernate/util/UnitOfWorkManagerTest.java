@@ -0,0 +1,134 @@
+package by.itacademy.hibernate.util;
+
+import by.itacademy.hibernate.entity.Company;
+import by.itacademy.hibernate.entity.PersonalInfo;
+import by.itacademy.hibernate.entity.Role;
+import by.itacademy.hibernate.entity.User;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
+
+@TestInstance(PER_CLASS)
+class UnitOfWorkManagerTest {
+
+    private static final int BATCH_USERS = 1_000;
+    private static final int BATCH_SIZE = 50;
+
+    private final SessionFactory sessionFactory = HibernateUtil.buildSessionFactory();
+
+    @AfterAll
+    public void finish() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void commitsAndClosesSessionAtEndOfUnit() {
+        UnitOfWorkManager unitOfWork = new UnitOfWorkManager(sessionFactory);
+
+        Session session = unitOfWork.inTransaction(current -> {
+            current.save(Company.builder().name("UnitOfWork").build());
+            return current;
+        });
+
+        assertThat(session.isOpen()).isFalse();
+        Long count = unitOfWork.readOnly(current -> current.createQuery(
+                        "SELECT COUNT(c) FROM Company c WHERE c.name = 'UnitOfWork'", Long.class)
+                .getSingleResult());
+        assertThat(count).isEqualTo(1L);
+        assertThat(unitOfWork.getUnits()).isEqualTo(2);
+    }
+
+    @Test
+    void nestedUnitsJoinOuterTransaction() {
+        UnitOfWorkManager unitOfWork = new UnitOfWorkManager(sessionFactory);
+
+        assertThatThrownBy(() -> unitOfWork.run(outer -> {
+            outer.save(user("NestedRolledBack"));
+            unitOfWork.run(inner -> {
+                assertThat(inner).isSameAs(outer);
+                inner.save(user("NestedInner"));
+            });
+            throw new IllegalStateException("rollback");
+        })).isInstanceOf(IllegalStateException.class);
+
+        Long count = unitOfWork.readOnly(session -> session.createQuery(
+                        "SELECT COUNT(u) FROM User u WHERE u.username LIKE 'Nested%'", Long.class)
+                .getSingleResult());
+        assertThat(count).isZero();
+        assertThat(unitOfWork.getUnits()).isEqualTo(2);
+        assertThat(unitOfWork.getRollbacks()).isEqualTo(1);
+    }
+
+    @Test
+    void writingUnitCannotJoinReadOnlyUnit() {
+        UnitOfWorkManager unitOfWork = new UnitOfWorkManager(sessionFactory);
+
+        assertThatThrownBy(() -> unitOfWork.readOnly(outer -> {
+            unitOfWork.run(inner -> inner.save(user("NestedInReadOnly")));
+            return null;
+        })).isInstanceOf(IllegalStateException.class);
+        Long joined = unitOfWork.readOnly(outer -> unitOfWork.readOnly(inner -> inner.createQuery(
+                        "SELECT COUNT(u) FROM User u WHERE u.username = 'NestedInReadOnly'", Long.class)
+                .getSingleResult()));
+
+        assertThat(joined).isZero();
+        assertThat(unitOfWork.getRollbacks()).isEqualTo(1);
+    }
+
+    @Test
+    void readOnlyUnitDoesNotFlushChanges() {
+        UnitOfWorkManager unitOfWork = new UnitOfWorkManager(sessionFactory);
+        Long id = unitOfWork.inTransaction(session -> (Long) session.save(user("ReadOnly")));
+
+        unitOfWork.readOnly(session -> {
+            session.get(User.class, id).setUsername("Changed");
+            return null;
+        });
+
+        String username = unitOfWork.readOnly(session -> session.get(User.class, id).getUsername());
+        assertThat(username).isEqualTo("ReadOnly");
+    }
+
+    @Test
+    void batchesKeepFirstLevelCacheBounded() {
+        UnitOfWorkManager unitOfWork = new UnitOfWorkManager(sessionFactory);
+        List<String> usernames = IntStream.range(0, BATCH_USERS)
+                .mapToObj(i -> "Batch" + i)
+                .collect(Collectors.toList());
+
+        unitOfWork.inBatches(usernames, BATCH_SIZE, (session, username) -> session.save(user(username)));
+
+        Long count = unitOfWork.readOnly(session -> session.createQuery(
+                        "SELECT COUNT(u) FROM User u WHERE u.username LIKE 'Batch%'", Long.class)
+                .getSingleResult());
+        assertThat(count).isEqualTo(BATCH_USERS);
+        assertThat(unitOfWork.getBatchFlushes()).isEqualTo(BATCH_USERS / BATCH_SIZE);
+        assertThat(unitOfWork.getMaxCachedEntities()).isLessThanOrEqualTo(BATCH_SIZE);
+
+        System.out.printf("unit of work: %d units, avg lifetime %.1f ms, max lifetime %.1f ms, " +
+                        "avg cached entities %.1f, max cached entities %d%n",
+                unitOfWork.getUnits(), unitOfWork.getAverageLifetimeMillis(), unitOfWork.getMaxLifetimeMillis(),
+                unitOfWork.getAverageCachedEntities(), unitOfWork.getMaxCachedEntities());
+    }
+
+    private User user(String username) {
+        return User.builder()
+                .username(username)
+                .personalInfo(PersonalInfo.builder()
+                        .firstname(username)
+                        .lastname("Unit")
+                        .build())
+                .role(Role.USER)
+                .build();
+    }
+}
@@ -0,0 +1,23 @@
+package by.itacademy.hibernate.utils;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.Properties;
+
+/**
+ * Свойства Hibernate для встроенной in-memory базы H2, переопределяющие подключение из hibernate.cfg.xml
+ */
+@UtilityClass
+public class EmbeddedDatabase {
+
+    public Properties h2(String name) {
+        Properties properties = new Properties();
+        properties.setProperty("hibernate.connection.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        properties.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        properties.setProperty("hibernate.connection.username", "sa");
+        properties.setProperty("hibernate.connection.password", "");
+        properties.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.setProperty("hibernate.show_sql", "false");
+        return properties;
+    }
+}
@@ -0,0 +1,108 @@
+package by.itacademy.hibernate.utils;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Проверяет планы выполнения запросов во встроенной базе H2.
+ * Перехватывает все SQL, которые Hibernate выполняет внутри проверяемого кода, для каждого выполняет EXPLAIN
+ * и сообщает о полных просмотрах таблиц, в которых строк больше порога
+ */
+public class QueryPlanVerifier {
+
+    private static final Pattern TABLE_SCAN = Pattern.compile("/\\* (\\w+)\\.(\\w+)\\.tableScan \\*/");
+
+    private final SessionFactory sessionFactory;
+    private final long fullScanThreshold;
+    private final Map<String, Long> rowCounts = new HashMap<>();
+
+    public QueryPlanVerifier(SessionFactory sessionFactory, long fullScanThreshold) {
+        this.sessionFactory = sessionFactory;
+        this.fullScanThreshold = fullScanThreshold;
+    }
+
+    /**
+     * Возвращает список нарушений: таблица, число строк и SQL, который просматривает её целиком.
+     * Таблицы из {allowedFullScans} не проверяются - для запросов, которые по смыслу читают всю таблицу
+     */
+    public List<String> verify(Consumer<Session> query, String... allowedFullScans) {
+        Set<String> allowed = new LinkedHashSet<>();
+        for (String table : allowedFullScans) {
+            allowed.add(table.toUpperCase(Locale.ROOT));
+        }
+
+        Set<String> statements = new LinkedHashSet<>();
+        try (Session session = sessionFactory.withOptions()
+                .statementInspector(sql -> {
+                    statements.add(sql);
+                    return sql;
+                })
+                .openSession()) {
+            session.beginTransaction();
+            query.accept(session);
+
+            List<String> violations = new ArrayList<>();
+            session.doWork(connection -> {
+                for (String sql : statements) {
+                    Matcher scans = TABLE_SCAN.matcher(explain(connection, sql));
+                    while (scans.find()) {
+                        String table = scans.group(1) + "." + scans.group(2);
+                        long rows = rowCount(connection, table);
+                        if (!allowed.contains(scans.group(2)) && rows > fullScanThreshold) {
+                            violations.add(table + " (" + rows + " rows): " + sql);
+                        }
+                    }
+                }
+            });
+            session.getTransaction().rollback();
+            return violations;
+        }
+    }
+
+    private String explain(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            ParameterMetaData parameters = statement.getParameterMetaData();
+            for (int i = 1; i <= parameters.getParameterCount(); i++) {
+                statement.setNull(i, Types.NULL);
+            }
+            try (ResultSet plan = statement.executeQuery()) {
+                StringBuilder result = new StringBuilder();
+                while (plan.next()) {
+                    result.append(plan.getString(1)).append('\n');
+                }
+                return result.toString();
+            }
+        }
+    }
+
+    private long rowCount(Connection connection, String table) throws SQLException {
+        Long cached = rowCounts.get(table);
+        if (cached != null) {
+            return cached;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet count = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            count.next();
+            rowCounts.put(table, count.getLong(1));
+            return count.getLong(1);
+        }
+    }
+}
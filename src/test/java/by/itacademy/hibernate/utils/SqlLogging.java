@@ -0,0 +1,21 @@
+package by.itacademy.hibernate.utils;
+
+import lombok.experimental.UtilityClass;
+import org.hibernate.cfg.AvailableSettings;
+
+import java.util.Properties;
+
+/**
+ * Свойства Hibernate, отключающие печать SQL из hibernate.cfg.xml: в нагрузочных тестах и бенчмарках
+ * вывод каждого запроса в stdout попадает в измеряемое время
+ */
+@UtilityClass
+public class SqlLogging {
+
+    public Properties disabled() {
+        Properties properties = new Properties();
+        properties.setProperty(AvailableSettings.SHOW_SQL, "false");
+        properties.setProperty(AvailableSettings.FORMAT_SQL, "false");
+        return properties;
+    }
+}
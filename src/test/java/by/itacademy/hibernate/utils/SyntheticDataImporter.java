@@ -0,0 +1,169 @@
+package by.itacademy.hibernate.utils;
+
+import by.itacademy.hibernate.entity.*;
+import by.itacademy.hibernate.util.AuditContext;
+import lombok.Builder;
+import lombok.Cleanup;
+import lombok.Value;
+import lombok.experimental.UtilityClass;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Наполняет базу синтетическими данными заданного объёма.
+ * Распределение сотрудников по компаниям, выплат и участников чатов по сотрудникам задаётся перекосом Ципфа
+ */
+@UtilityClass
+public class SyntheticDataImporter {
+
+    private static final String[] FIRST_NAMES = {
+            "Bill", "Steve", "Sergey", "Tim", "Diane", "Larry", "Satya", "Sundar", "Susan", "Sheryl",
+            "Jeff", "Mark", "Marissa", "Jack", "Reed", "Evan", "Ginni", "Safra", "Lisa", "Jensen"
+    };
+    private static final String[] LAST_NAMES = {
+            "Gates", "Jobs", "Brin", "Cook", "Greene", "Page", "Nadella", "Pichai", "Wojcicki", "Sandberg",
+            "Bezos", "Zuckerberg", "Mayer", "Dorsey", "Hastings", "Spiegel", "Rometty", "Catz", "Su", "Huang"
+    };
+    private static final LocalDate MIN_BIRTHDAY = LocalDate.of(1950, 1, 1);
+    private static final int BIRTHDAY_RANGE_DAYS = 365 * 50;
+    private static final int MIN_AMOUNT = 100;
+    private static final int MAX_AMOUNT = 1_000;
+
+    public Dataset importData(SessionFactory sessionFactory, Spec spec) {
+        Random random = new Random(spec.getSeed());
+        @Cleanup StatelessSession session = sessionFactory.openStatelessSession();
+        session.beginTransaction();
+
+        List<Company> companies = new ArrayList<>(spec.getCompanies());
+        for (int i = 0; i < spec.getCompanies(); i++) {
+            Company company = Company.builder()
+                    .name("Company" + i)
+                    .build();
+            session.insert(company);
+            companies.add(company);
+        }
+
+        ZipfSampler companySampler = new ZipfSampler(spec.getCompanies(), spec.getSkew());
+        List<User> users = new ArrayList<>(spec.getUsers());
+        for (int i = 0; i < spec.getUsers(); i++) {
+            User user = User.builder()
+                    .username("user" + i)
+                    .personalInfo(PersonalInfo.builder()
+                            .firstname(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)])
+                            .lastname(LAST_NAMES[random.nextInt(LAST_NAMES.length)])
+                            .birthDate(new Birthday(MIN_BIRTHDAY.plusDays(random.nextInt(BIRTHDAY_RANGE_DAYS))))
+                            .build())
+                    .role(random.nextInt(10) == 0 ? Role.ADMIN : Role.USER)
+                    .company(companies.get(companySampler.next(random)))
+                    .build();
+            session.insert(user);
+            users.add(user);
+
+            Profile profile = Profile.builder()
+                    .user(user)
+                    .street("Street" + random.nextInt(1_000))
+                    .language(Language.values()[random.nextInt(Language.values().length)])
+                    .build();
+            session.insert(profile);
+        }
+
+        ZipfSampler userSampler = new ZipfSampler(spec.getUsers(), spec.getSkew());
+        long paymentCount = (long) spec.getUsers() * spec.getPaymentsPerUser();
+        List<Long> paymentIds = new ArrayList<>((int) paymentCount);
+        for (long i = 0; i < paymentCount; i++) {
+            Payment payment = Payment.builder()
+                    .receiver(users.get(userSampler.next(random)))
+                    .amount(MIN_AMOUNT + random.nextInt(MAX_AMOUNT - MIN_AMOUNT + 1))
+                    .build();
+            session.insert(payment);
+            paymentIds.add(payment.getId());
+        }
+
+        List<Long> chatIds = new ArrayList<>(spec.getChats());
+        if (spec.getChats() > 0) {
+            List<Chat> chats = new ArrayList<>(spec.getChats());
+            for (int i = 0; i < spec.getChats(); i++) {
+                Chat chat = Chat.builder()
+                        .name("Chat" + i)
+                        .build();
+                session.insert(chat);
+                chats.add(chat);
+                chatIds.add(chat.getId());
+            }
+
+            ZipfSampler chatSampler = new ZipfSampler(spec.getChats(), spec.getSkew());
+            Instant importedAt = Instant.now();
+            for (User user : users) {
+                int memberships = Math.min(spec.getChatsPerUser(), spec.getChats());
+                Set<Integer> userChats = new HashSet<>(memberships);
+                while (userChats.size() < memberships) {
+                    userChats.add(chatSampler.next(random));
+                }
+                for (Integer chatIndex : userChats) {
+                    UserChat userChat = UserChat.builder()
+                            .user(user)
+                            .chat(chats.get(chatIndex))
+                            .build();
+                    // StatelessSession не вызывает AuditStampListener
+                    userChat.setCreatedAt(importedAt);
+                    userChat.setCreatedBy(AuditContext.currentPrincipal());
+                    session.insert(userChat);
+                }
+            }
+        }
+
+        session.getTransaction().commit();
+
+        return new Dataset(
+                companies.stream().map(Company::getName).toList(),
+                users.stream().map(User::getId).toList(),
+                users.stream().map(User::getPersonalInfo).toList(),
+                paymentIds,
+                chatIds);
+    }
+
+    /**
+     * Параметры синтетического набора данных
+     */
+    @Value
+    @Builder
+    public static class Spec {
+        @Builder.Default
+        int companies = 10;
+        @Builder.Default
+        int users = 1_000;
+        @Builder.Default
+        int paymentsPerUser = 10;
+        @Builder.Default
+        int chats = 10;
+        @Builder.Default
+        int chatsPerUser = 2;
+        /**
+         * Показатель распределения Ципфа, 0 - равномерное распределение
+         */
+        @Builder.Default
+        double skew = 1.0;
+        @Builder.Default
+        long seed = 42;
+    }
+
+    /**
+     * Ключи созданных записей, по которым нагрузочный тест выбирает параметры запросов
+     */
+    @Value
+    public static class Dataset {
+        List<String> companyNames;
+        List<Long> userIds;
+        List<PersonalInfo> personalInfos;
+        List<Long> paymentIds;
+        List<Long> chatIds;
+    }
+}
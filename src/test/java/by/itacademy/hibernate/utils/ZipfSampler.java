@@ -0,0 +1,34 @@
+package by.itacademy.hibernate.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Выбирает индекс из [0, n) по закону Ципфа: индекс i выпадает с вероятностью ~ 1 / (i + 1)^skew.
+ * При skew = 0 распределение равномерное
+ */
+public class ZipfSampler {
+
+    private final double[] cumulative;
+
+    public ZipfSampler(int n, double skew) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        cumulative = new double[n];
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    public int next(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int position = index >= 0 ? index : -index - 1;
+        return Math.min(position, cumulative.length - 1);
+    }
+}